@@ -0,0 +1,124 @@
+/*
+ * messages exchanged with the server
+ */
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * builds the request json and reads the response json, for the window and the command line client
+ */
+public class ClientProtocol {
+
+    /**
+     * translate a command into a request
+     *
+     * @param timeout milliseconds the client waits for the response, the server drops the request
+     *                once it has passed; 0 for the server's own timeout
+     * @param keepAlive whether the server should wait for another request on the connection
+     * @return request message
+     */
+    public static String requestMessage(String command, String word, String des, int timeout, boolean keepAlive) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("command", command);
+        map.put("word", word);
+        map.put("des", des);
+        if (timeout > 0) {
+            map.put("timeout", timeout);
+        }
+        if (keepAlive) {
+            map.put("keepAlive", true);
+        }
+        return new JSONObject(map).toString();
+    }
+
+    /**
+     * translate an operation line, either a request in json or `command [word] [description]`,
+     * into a request
+     *
+     * @param line operation line
+     * @param keepAlive whether the server should wait for another request on the connection
+     * @return request message
+     * @throws JSONException if the line starts like json but isn't
+     */
+    public static String requestMessage(String line, boolean keepAlive) {
+        JSONObject json;
+        if (line.startsWith("{")) {
+            json = new JSONObject(line);
+        } else {
+            String[] parts = line.split("\\s+", 3);
+            Map<String, Object> map = new HashMap<>();
+            map.put("command", parts[0]);
+            if (parts[0].equals("define-search")) {
+                // the rest of the line is the query
+                map.put("query", String.join(" ", Arrays.asList(parts).subList(1, parts.length)));
+            } else {
+                map.put("word", parts.length > 1 ? parts[1] : "");
+                map.put("des", parts.length > 2 ? parts[2] : "");
+            }
+            json = new JSONObject(map);
+        }
+        if (keepAlive) {
+            json.put("keepAlive", true);
+        }
+        return json.toString();
+    }
+
+    /**
+     * @param responseMsg response json
+     * @return response
+     * @throws JSONException if the response isn't json
+     */
+    public static Response parseResponse(String responseMsg) {
+        JSONObject json = new JSONObject(responseMsg);
+        return new Response(json.optString("command"), json.optBoolean("result"),
+                json.optString("message"), json.optString("des"));
+    }
+
+    /**
+     * the fields of a response the clients show
+     */
+    public static class Response {
+        private final String command;
+        private final boolean result;
+        private final String message;
+        private final String des;
+
+        Response(String command, boolean result, String message, String des) {
+            this.command = command;
+            this.result = result;
+            this.message = message;
+            this.des = des;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public boolean isSucceeded() {
+            return result;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return description of a searched word, empty for other commands
+         */
+        public String getDes() {
+            return des;
+        }
+
+        /**
+         * @return whether the server turned the request away without handling it, it may be retried
+         */
+        public boolean isTurnedAway() {
+            return !result && (message.equals(ConsoleMessage.RATE_LIMITED) || message.equals(ConsoleMessage.SERVER_BUSY));
+        }
+    }
+}
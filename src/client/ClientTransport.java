@@ -0,0 +1,68 @@
+/*
+ * connections from the client to the server
+ */
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * opens plain or tls connections, e.g. java -Ddictionary.tls=true -Djavax.net.ssl.trustStore=... -jar DictionaryClient.jar
+ */
+public class ClientTransport {
+    // connect over tls, trusting the javax.net.ssl.trustStore properties
+    public static final boolean TLS = Boolean.getBoolean("dictionary.tls");
+
+    /**
+     * connect with the configured transport, tls sessions are resumed across connections to the same server
+     *
+     * @param address server address
+     * @param port server port
+     * @param connectTimeout milliseconds to connect
+     * @param readTimeout milliseconds to wait for data
+     * @return connected socket
+     */
+    public static Socket connect(String address, int port, int connectTimeout, int readTimeout) throws IOException {
+        return connect(TLS ? (SSLSocketFactory) SSLSocketFactory.getDefault() : null,
+                address, port, connectTimeout, readTimeout);
+    }
+
+    /**
+     * connect, then layer tls on the connection if a factory is given,
+     * so the connect timeout applies to tls connections too
+     *
+     * @param tlsFactory tls factory, its context holds the sessions to resume, null for a plain connection
+     * @return connected socket, with the tls handshake done
+     */
+    public static Socket connect(SSLSocketFactory tlsFactory, String address, int port,
+                                 int connectTimeout, int readTimeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), connectTimeout);
+            socket.setSoTimeout(readTimeout);
+            socket.setTcpNoDelay(true);
+            if (tlsFactory == null) {
+                return socket;
+            }
+            SSLSocket tlsSocket = (SSLSocket) tlsFactory.createSocket(socket, address, port, true);
+            tlsSocket.startHandshake();
+            return tlsSocket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * close a socket, a tls socket is closed with a close_notify instead of half closes
+     */
+    public static void close(Socket socket) throws IOException {
+        if (!(socket instanceof SSLSocket)) {
+            socket.shutdownInput();
+            socket.shutdownOutput();
+        }
+        socket.close();
+    }
+}
@@ -3,7 +3,6 @@
  */
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -12,8 +11,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.SocketTimeoutException;
 
 
 public class ClientWindow {
@@ -23,6 +21,8 @@ public class ClientWindow {
     private static final int DEFAULT_PORT = 8000;
     private static final String DEFAULT_SERVER = "127.0.0.1";
     private static final int SIZE_OF_BUFFER = 8 * 1024;
+    private static final int CONNECT_TIMEOUT = Integer.getInteger("dictionary.connectTimeout", 3000);
+    private static final int READ_TIMEOUT = Integer.getInteger("dictionary.readTimeout", 10000);
 
     private String serverAddress;
     private int port;
@@ -40,6 +40,7 @@ public class ClientWindow {
     private JButton searchButton;
     private JButton deleteButton;
     private JButton listButton;
+    private JButton defineButton;
     private JButton clearButton;
     private JTextArea consoleText;
 
@@ -86,11 +87,12 @@ public class ClientWindow {
     private void request(String command, String word, String des) {
         Thread thread = new Thread(() -> {
             try {
-                Socket socket = new Socket(serverAddress, port);
+                Socket socket = ClientTransport.connect(serverAddress, port, CONNECT_TIMEOUT, READ_TIMEOUT);
                 DataInputStream inputStream = new DataInputStream(socket.getInputStream());
                 DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
 
-                outputStream.writeUTF(requestMessage(command, word, des));
+                // the server drops the request once the client stops waiting for it
+                outputStream.writeUTF(ClientProtocol.requestMessage(command, word, des, READ_TIMEOUT, false));
                 outputStream.flush();
 
                 byte[] receiveBuffer = new byte[SIZE_OF_BUFFER];
@@ -100,6 +102,9 @@ public class ClientWindow {
                     handleResponseMessage(response);
                 }
                 closeSocket(socket);
+            } catch (SocketTimeoutException e) {
+                showMessage(ConsoleMessage.REQUEST_TIMEOUT);
+                e.printStackTrace();
             } catch (IOException e) {
                 showMessage(ConsoleMessage.CONNECT_FAILED);
                 e.printStackTrace();
@@ -111,19 +116,6 @@ public class ClientWindow {
         thread.start();
     }
 
-    /**
-     * translate request message into json string
-     *
-     * @return request message
-     */
-    private String requestMessage(String command, String word, String des) {
-        Map<String, String> map = new HashMap<>();
-        map.put("command", command);
-        map.put("word", word);
-        map.put("des", des);
-        return new JSONObject(map).toString();
-    }
-
     /**
      * parse response message, show in console
      * @param responseMsg response json
@@ -131,15 +123,11 @@ public class ClientWindow {
     private void handleResponseMessage(String responseMsg) {
         SwingUtilities.invokeLater(() -> {
             try {
-                JSONObject json = new JSONObject(responseMsg);
-                String command = json.optString("command");
-                String message = json.optString("message");
-                boolean result = json.optBoolean("result");
-                if (command.equals("search")) {
-                    String des = json.optString("des");
-                    desField.setText(des);
+                ClientProtocol.Response response = ClientProtocol.parseResponse(responseMsg);
+                if (response.getCommand().equals("search")) {
+                    desField.setText(response.getDes());
                 }
-                showMessage(message);
+                showMessage(response.getMessage());
             } catch (JSONException e) {
                 e.printStackTrace();
                 showMessage(ConsoleMessage.INVALID_REQUEST);
@@ -304,6 +292,18 @@ public class ClientWindow {
             consoleText.setText("");
         }));
 
+        defineButton = new JButton("define");
+        constraint.insets = new Insets(0, 0, 0, 0);
+        constraint.gridx = 3;
+        constraint.gridy = 4;
+        constraint.gridwidth = 1;
+        panel.add(defineButton, constraint);
+        defineButton.addActionListener((e -> {
+            if (checkServerAndPort() && checkDescription()) {
+                request("define-search", "", des);
+            }
+        }));
+
         // row 5
         consoleText = new JTextArea();
         constraint.insets = new Insets(0, 0, 0, 0);
@@ -370,9 +370,7 @@ public class ClientWindow {
      */
     private void closeSocket(Socket socket) {
         try {
-            socket.shutdownInput();
-            socket.shutdownOutput();
-            socket.close();
+            ClientTransport.close(socket);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,206 @@
+/*
+ * a client without a window, for scripts and measuring the server
+ */
+
+import org.json.JSONException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * sends the operations of a file, or of standard input, over one kept alive connection,
+ * with up to depth requests waiting for their responses, and prints every response message
+ * to standard output and a throughput and latency summary to standard error.
+ *
+ * an operation is a line, either a request in json or `command [word] [description]`,
+ * e.g. `search apple`, `add pear a sweet fruit`, `define-search sweet fruit`, `list`.
+ * blank lines and lines starting with # are skipped.
+ *
+ * usage: java [-Ddictionary.tls=true] -cp DictionaryClient.jar CommandLineClient <server-address> <port> [depth] [operations-file]
+ */
+public class CommandLineClient {
+    private static final int CONNECT_TIMEOUT = Integer.getInteger("dictionary.connectTimeout", 3000);
+    private static final int READ_TIMEOUT = Integer.getInteger("dictionary.readTimeout", 10000);
+    private static final int DEFAULT_DEPTH = 1;
+
+    private final DataInputStream inputStream;
+    private final DataOutputStream outputStream;
+    // System.nanoTime() each request waiting for its response was sent, in order
+    private final Queue<Long> inFlight = new ConcurrentLinkedQueue<>();
+    // requests that may still be sent before a response comes back
+    private final Semaphore window;
+
+    private final List<Long> latencies = new ArrayList<>();
+    private int succeeded;
+    private int failed;
+    private int rejected;
+
+    private CommandLineClient(Socket socket, int depth) throws IOException {
+        inputStream = new DataInputStream(socket.getInputStream());
+        outputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        window = new Semaphore(depth);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: java [-Ddictionary.tls=true] -cp DictionaryClient.jar CommandLineClient "
+                    + "<server-address> <port> [depth] [operations-file]");
+            System.exit(1);
+        }
+        int port = parseUtil.parsePort(args[1]);
+        if (port == -1) {
+            System.err.println(ConsoleMessage.INVALID_PORT);
+            System.exit(1);
+        }
+        int depth = args.length > 2 ? Math.max(1, Integer.parseInt(args[2])) : DEFAULT_DEPTH;
+
+        List<String> requests = new ArrayList<>();
+        try (BufferedReader reader = args.length > 3
+                ? Files.newBufferedReader(Paths.get(args[3]), StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    requests.add(ClientProtocol.requestMessage(line, true));
+                } catch (JSONException e) {
+                    System.err.println("line " + lineNumber + ": " + ConsoleMessage.INVALID_REQUEST);
+                }
+            }
+        }
+
+        Socket socket;
+        try {
+            socket = ClientTransport.connect(args[0], port, CONNECT_TIMEOUT, READ_TIMEOUT);
+        } catch (IOException e) {
+            System.err.println(ConsoleMessage.CONNECT_FAILED);
+            System.exit(1);
+            return;
+        }
+        CommandLineClient client = new CommandLineClient(socket, depth);
+        long start = System.nanoTime();
+        int answered;
+        try {
+            answered = client.run(requests);
+        } finally {
+            socket.close();
+        }
+        client.report(requests.size(), answered, depth, System.nanoTime() - start);
+        System.exit(answered == requests.size() ? 0 : 1);
+    }
+
+    /**
+     * send the requests from this thread while another reads the responses,
+     * blocking whenever depth requests are waiting
+     *
+     * @return number of responses read, fewer than the requests if the connection failed
+     */
+    private int run(List<String> requests) throws InterruptedException {
+        int[] answered = new int[1];
+        Thread reader = new Thread(() -> answered[0] = readResponses(requests.size()), "dictionary-cli-reader");
+        reader.start();
+        try {
+            sending:
+            for (int i = 0; i < requests.size(); i++) {
+                while (!window.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (!reader.isAlive()) {
+                        break sending;
+                    }
+                }
+                inFlight.add(System.nanoTime());
+                outputStream.writeUTF(requests.get(i));
+                // requests are sent together while the window is open, and flushed once it is full
+                if (window.availablePermits() == 0 || i == requests.size() - 1) {
+                    outputStream.flush();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(ConsoleMessage.CONNECT_FAILED);
+        }
+        reader.join();
+        return answered[0];
+    }
+
+    /**
+     * @param count responses expected
+     * @return responses read
+     */
+    private int readResponses(int count) {
+        int answered = 0;
+        try {
+            for (; answered < count; answered++) {
+                String response = inputStream.readUTF();
+                latencies.add(System.nanoTime() - inFlight.remove());
+                window.release();
+                handleResponseMessage(response);
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println(ConsoleMessage.REQUEST_TIMEOUT);
+        } catch (IOException e) {
+            // e.g. turned away when connecting, or no longer kept alive
+            System.err.println(ConsoleMessage.CONNECT_FAILED);
+        }
+        return answered;
+    }
+
+    /**
+     * print the message of a response
+     * @param responseMsg response json
+     */
+    private void handleResponseMessage(String responseMsg) {
+        ClientProtocol.Response response = ClientProtocol.parseResponse(responseMsg);
+        if (response.isSucceeded()) {
+            succeeded++;
+        } else {
+            failed++;
+            if (response.isTurnedAway()) {
+                rejected++;
+            }
+        }
+        System.out.println(response.getMessage());
+    }
+
+    private void report(int requests, int answered, int depth, long elapsed) {
+        System.out.flush();
+        System.err.printf("%d request(s), %d answered: %d succeeded, %d failed (%d turned away), depth %d%n",
+                requests, answered, succeeded, failed, rejected, depth);
+        if (latencies.isEmpty()) {
+            return;
+        }
+        long[] sorted = new long[latencies.size()];
+        long total = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+            total += sorted[i];
+        }
+        Arrays.sort(sorted);
+        int count = sorted.length;
+        System.err.printf("%.3f s, %.0f req/s, latency us: mean %d, p50 %d, p99 %d, max %d%n",
+                elapsed / 1e9, count * 1e9 / elapsed,
+                total / count / 1000,
+                sorted[count / 2] / 1000,
+                sorted[Math.min(count - 1, (int) (count * 0.99))] / 1000,
+                sorted[count - 1] / 1000);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * measure the per request cost of each transport
+ */
+
+import org.json.JSONObject;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * sends the same search over and over to a running server, one mode after another:
+ * a connection per request, and one kept alive connection; over tls, a connection per request
+ * is measured both with a full handshake and with a resumed session.
+ *
+ * usage: java [-Ddictionary.tls=true] -cp DictionaryClient.jar TransportBenchmark <server-address> <port> [requests] [word]
+ * the server should run with -Ddictionary.rateLimit=0, so the benchmark isn't rate limited.
+ */
+public class TransportBenchmark {
+    private static final int CONNECT_TIMEOUT = 3000;
+    private static final int READ_TIMEOUT = 10000;
+
+    private final String address;
+    private final int port;
+    private final String request;
+    private final String keepAliveRequest;
+    private int rejected;
+
+    private TransportBenchmark(String address, int port, String word) {
+        this.address = address;
+        this.port = port;
+        Map<String, Object> map = new HashMap<>();
+        map.put("command", "search");
+        map.put("word", word);
+        this.request = new JSONObject(map).toString();
+        map.put("keepAlive", true);
+        this.keepAliveRequest = new JSONObject(map).toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java [-Ddictionary.tls=true] -cp DictionaryClient.jar TransportBenchmark "
+                    + "<server-address> <port> [requests] [word]");
+            System.exit(1);
+        }
+        int port = parseUtil.parsePort(args[1]);
+        if (port == -1) {
+            System.err.println(ConsoleMessage.INVALID_PORT);
+            System.exit(1);
+        }
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        TransportBenchmark benchmark = new TransportBenchmark(args[0], port, args.length > 3 ? args[3] : "apple");
+
+        System.out.println((ClientTransport.TLS ? "tls" : "plain") + ", " + requests + " request(s) per mode");
+        System.out.printf("%-24s %10s %10s %10s %10s%n", "mode", "req/s", "mean us", "p50 us", "p99 us");
+        if (ClientTransport.TLS) {
+            SSLSocketFactory shared = (SSLSocketFactory) SSLSocketFactory.getDefault();
+            benchmark.run("full handshake", requests, () -> benchmark.oneShot(freshTlsFactory()));
+            benchmark.run("resumed session", requests, () -> benchmark.oneShot(shared));
+            benchmark.runKeepAlive("keep-alive", requests, shared);
+        } else {
+            benchmark.run("connection per request", requests, () -> benchmark.oneShot(null));
+            benchmark.runKeepAlive("keep-alive", requests, null);
+        }
+        if (benchmark.rejected > 0) {
+            System.out.println(benchmark.rejected + " request(s) were turned away by the server");
+        }
+    }
+
+    private interface Call {
+        void call() throws IOException;
+    }
+
+    /**
+     * time single calls, after a tenth as many to warm up
+     */
+    private void run(String mode, int requests, Call call) throws IOException {
+        for (int i = 0; i < requests / 10; i++) {
+            call.call();
+        }
+        long[] latencies = new long[requests];
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long begin = System.nanoTime();
+            call.call();
+            latencies[i] = System.nanoTime() - begin;
+        }
+        report(mode, latencies, System.nanoTime() - start);
+    }
+
+    private void runKeepAlive(String mode, int requests, SSLSocketFactory tlsFactory) throws IOException {
+        Socket socket = ClientTransport.connect(tlsFactory, address, port, CONNECT_TIMEOUT, READ_TIMEOUT);
+        try {
+            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+            DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+            run(mode, requests, () -> {
+                outputStream.writeUTF(keepAliveRequest);
+                outputStream.flush();
+                check(inputStream.readUTF());
+            });
+        } finally {
+            ClientTransport.close(socket);
+        }
+    }
+
+    /**
+     * a request on its own connection, like the client window sends it
+     */
+    private void oneShot(SSLSocketFactory tlsFactory) throws IOException {
+        Socket socket = ClientTransport.connect(tlsFactory, address, port, CONNECT_TIMEOUT, READ_TIMEOUT);
+        try {
+            DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+            outputStream.writeUTF(request);
+            outputStream.flush();
+            check(new DataInputStream(socket.getInputStream()).readUTF());
+        } finally {
+            ClientTransport.close(socket);
+        }
+    }
+
+    private void check(String response) {
+        String message = new JSONObject(response).optString("message");
+        if (message.equals(ConsoleMessage.RATE_LIMITED) || message.equals(ConsoleMessage.SERVER_BUSY)) {
+            rejected++;
+        }
+    }
+
+    /**
+     * a factory with an empty session cache, so every connection does a full handshake
+     */
+    private static SSLSocketFactory freshTlsFactory() throws IOException {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+            return context.getSocketFactory();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void report(String mode, long[] latencies, long elapsed) {
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        int count = latencies.length;
+        System.out.printf("%-24s %10.0f %10d %10d %10d%n", mode,
+                count * 1e9 / elapsed,
+                total / count / 1000,
+                latencies[count / 2] / 1000,
+                latencies[Math.min(count - 1, (int) (count * 0.99))] / 1000);
+    }
+}
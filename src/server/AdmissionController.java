@@ -0,0 +1,140 @@
+/*
+ * decide which connections the server takes on
+ */
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * caps concurrent connections and rate limits every client address with a token bucket
+ */
+public class AdmissionController {
+    // idle buckets are dropped once this many addresses are tracked
+    private static final int MAX_TRACKED_CLIENTS = 10000;
+
+    public enum Decision {
+        ACCEPTED,
+        TOO_MANY_CONNECTIONS,
+        RATE_LIMITED
+    }
+
+    private final int maxConnections;
+    private final double tokensPerSecond;
+    private final double burst;
+    private final Map<InetAddress, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder rejectedRateLimited = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+
+    /**
+     * @param maxConnections connections queued or being handled at once
+     * @param tokensPerSecond requests per second per client, 0 for unlimited
+     * @param burst requests a client may send at once
+     */
+    public AdmissionController(int maxConnections, double tokensPerSecond, double burst) {
+        this.maxConnections = maxConnections;
+        this.tokensPerSecond = tokensPerSecond;
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * admit a new connection, an accepted connection must be released when done
+     * @param address client address
+     * @return decision
+     */
+    public Decision admit(InetAddress address) {
+        if (tokensPerSecond > 0 && !bucketOf(address).tryAcquire()) {
+            rejectedRateLimited.increment();
+            return Decision.RATE_LIMITED;
+        }
+        if (activeConnections.incrementAndGet() > maxConnections) {
+            activeConnections.decrementAndGet();
+            rejectedConnections.increment();
+            return Decision.TOO_MANY_CONNECTIONS;
+        }
+        admitted.increment();
+        return Decision.ACCEPTED;
+    }
+
+    /**
+     * admit one more request on a connection that is kept alive
+     * @param address client address
+     * @return false if the client is over its rate
+     */
+    public boolean admitRequest(InetAddress address) {
+        if (tokensPerSecond > 0 && !bucketOf(address).tryAcquire()) {
+            rejectedRateLimited.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * an accepted connection is finished
+     */
+    public void release() {
+        activeConnections.decrementAndGet();
+    }
+
+    /**
+     * an accepted connection was turned away because the work queue is full
+     */
+    public void rejectQueueFull() {
+        admitted.decrement();
+        rejectedQueueFull.increment();
+        release();
+    }
+
+    /**
+     * @return counters for tuning the limits
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("activeConnections", activeConnections.get());
+        metrics.put("admitted", admitted.sum());
+        metrics.put("rejectedConnections", rejectedConnections.sum());
+        metrics.put("rejectedRateLimited", rejectedRateLimited.sum());
+        metrics.put("rejectedQueueFull", rejectedQueueFull.sum());
+        return metrics;
+    }
+
+    private TokenBucket bucketOf(InetAddress address) {
+        if (buckets.size() > MAX_TRACKED_CLIENTS) {
+            // a full bucket behaves exactly like a new one, so it is safe to forget
+            buckets.values().removeIf(TokenBucket::isFull);
+        }
+        return buckets.computeIfAbsent(address, a -> new TokenBucket());
+    }
+
+    private class TokenBucket {
+        private double tokens = burst;
+        private long lastRefill = System.nanoTime();
+
+        synchronized boolean tryAcquire() {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean isFull() {
+            refill();
+            return tokens >= burst;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerSecond / 1e9);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * compact in-memory store of words and descriptions
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * words and descriptions are appended as UTF-8 records to one byte arena,
+ * and found through an open-addressing hash table of int offsets.
+ * both live in ByteBuffers, either on the heap or in direct memory,
+ * so an off-heap store leaves only a few objects for the GC to trace.
+ *
+ * the store is multi-versioned: the writer changes a private working copy and
+ * publish() turns it into an immutable Snapshot that readers use without locking.
+ * records are never changed once written and the table is split into chunks that
+ * are copied on write, so a new version shares all untouched chunks and the arena
+ * with the previous one.
+ *
+ * record layout: [hash: 4 bytes][word length: 4 bytes][des length: 4 bytes][word][des]
+ * with compression, the top bit of the des length marks a des encoded by the DescriptionCodec
+ * table slot layout: [record offset + 1, EMPTY or TOMBSTONE: 4 bytes][hash: 4 bytes]
+ *
+ * mutations come from a single writer at a time, callers synchronize them
+ */
+public class CompactWordStore {
+    private static final int HEADER_SIZE = 12;
+    private static final int SLOT_SIZE = 8;
+    private static final int CHUNK_SLOTS = 1024;
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int INITIAL_TABLE_SIZE = 1024;
+    private static final int INITIAL_ARENA_SIZE = 64 * 1024;
+    private static final int MAX_ARENA_SIZE = Integer.MAX_VALUE - 8;
+    private static final int COMPRESSED = 0x80000000;
+    // version numbers are shared by all stores and start from the clock, in microseconds,
+    // so a number seen before a reload or a restart is never given to another version
+    private static final AtomicLong VERSIONS = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private final boolean offHeap;
+    // null if descriptions are stored as they are
+    private final DescriptionCodec codec;
+    private volatile Snapshot published;
+
+    // working copy of the writer, records past the published end are not visible yet
+    private ByteBuffer arena;
+    private int arenaEnd;
+    private int garbageBytes;
+    private ByteBuffer[] chunks;
+    // chunks and chunk array already copied since the last publish, safe to write
+    private boolean[] ownedChunks;
+    private boolean ownsChunkArray;
+    private int tableSize;
+    private int size;
+    private int tombstones;
+
+    /**
+     * @param offHeap keep the arena and table in direct memory
+     * @param compressed compress descriptions, they are inflated when read
+     */
+    public CompactWordStore(boolean offHeap, boolean compressed) {
+        this.offHeap = offHeap;
+        this.codec = compressed ? new DescriptionCodec() : null;
+        this.arena = allocate(INITIAL_ARENA_SIZE);
+        newTable(INITIAL_TABLE_SIZE);
+        this.published = new Snapshot(0, arena, 0, chunks, tableSize, 0, codec);
+        this.ownsChunkArray = false;
+    }
+
+    /**
+     * @return latest published version, immutable
+     */
+    public Snapshot snapshot() {
+        return published;
+    }
+
+    /**
+     * add a word to the working copy, existing words are left untouched
+     * @param word word
+     * @param des description
+     * @return false if the word already exists
+     */
+    public boolean put(String word, String des) {
+        if (find(arena, chunks, tableSize, word) >= 0) {
+            return false;
+        }
+        if ((size + tombstones + 1) * 4L > tableSize * 3L) {
+            rebuild(size + 1);
+        }
+
+        int hash = hash(word);
+        byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+        byte[] desBytes = des.getBytes(StandardCharsets.UTF_8);
+        boolean isCompressed = false;
+        if (codec != null) {
+            byte[] encoded = codec.encode(desBytes);
+            if (encoded != null) {
+                desBytes = encoded;
+                isCompressed = true;
+            }
+        }
+        int offset = append(hash, wordBytes, desBytes, isCompressed);
+
+        int mask = tableSize - 1;
+        int slot = hash & mask;
+        while (slotOffset(chunks, slot) > 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (slotOffset(chunks, slot) == TOMBSTONE) {
+            tombstones--;
+        }
+        setSlot(slot, offset + 1, hash);
+        size++;
+        return true;
+    }
+
+    /**
+     * remove a word from the working copy, its bytes are reclaimed on the next rebuild
+     * @param word word
+     * @return false if the word doesn't exist
+     */
+    public boolean remove(String word) {
+        int slot = find(arena, chunks, tableSize, word);
+        if (slot < 0) {
+            return false;
+        }
+        garbageBytes += recordLength(arena, slotOffset(chunks, slot) - 1);
+        setSlot(slot, TOMBSTONE, 0);
+        tombstones++;
+        size--;
+
+        if (garbageBytes > arenaEnd / 2) {
+            rebuild(size);
+        }
+        return true;
+    }
+
+    /**
+     * make the working copy visible to readers as the next version
+     * @return the new version, its number is greater than any number handed out before
+     */
+    public Snapshot publish() {
+        Snapshot snapshot = new Snapshot(VERSIONS.incrementAndGet(), arena, arenaEnd, chunks, tableSize, size, codec);
+        snapshot.garbageBytes = garbageBytes;
+        snapshot.tombstones = tombstones;
+        published = snapshot;
+        ownsChunkArray = false;
+        return snapshot;
+    }
+
+    /**
+     * throw away the changes made since the last publish
+     */
+    public void discard() {
+        Snapshot snapshot = published;
+        arena = snapshot.arena;
+        arenaEnd = snapshot.arenaEnd;
+        chunks = snapshot.chunks;
+        tableSize = snapshot.tableSize;
+        size = snapshot.size;
+        garbageBytes = snapshot.garbageBytes;
+        tombstones = snapshot.tombstones;
+        ownsChunkArray = false;
+    }
+
+    private int append(int hash, byte[] wordBytes, byte[] desBytes, boolean isCompressed) {
+        long length = (long) HEADER_SIZE + wordBytes.length + desBytes.length;
+        ensureArenaCapacity(arenaEnd + length);
+
+        int offset = arenaEnd;
+        arena.putInt(offset, hash);
+        arena.putInt(offset + 4, wordBytes.length);
+        arena.putInt(offset + 8, isCompressed ? desBytes.length | COMPRESSED : desBytes.length);
+        ByteBuffer target = arena.duplicate();
+        target.position(offset + HEADER_SIZE);
+        target.put(wordBytes).put(desBytes);
+        arenaEnd += (int) length;
+        return offset;
+    }
+
+    /**
+     * grow into a new buffer, published versions keep reading the old one
+     */
+    private void ensureArenaCapacity(long required) {
+        if (required > MAX_ARENA_SIZE) {
+            throw new IllegalStateException("dictionary store is full");
+        }
+        if (required > arena.capacity()) {
+            long capacity = Math.max(required, (long) arena.capacity() * 2);
+            ByteBuffer grown = allocate((int) Math.min(capacity, MAX_ARENA_SIZE));
+            ByteBuffer used = arena.duplicate();
+            used.position(0).limit(arenaEnd);
+            grown.put(used);
+            arena = grown;
+        }
+    }
+
+    /**
+     * copy live records into a new arena and table sized for the expected size,
+     * dropping deleted records and tombstones. descriptions stored before the codec
+     * was trained are compressed on the way
+     */
+    private void rebuild(int expectedSize) {
+        int newTableSize = INITIAL_TABLE_SIZE;
+        while (expectedSize * 4L > newTableSize * 3L) {
+            newTableSize <<= 1;
+        }
+
+        ByteBuffer oldArena = arena;
+        int oldEnd = arenaEnd;
+        ByteBuffer[] oldChunks = chunks;
+        int oldTableSize = tableSize;
+
+        arena = allocate(Math.max(INITIAL_ARENA_SIZE, oldEnd - garbageBytes));
+        arenaEnd = 0;
+        garbageBytes = 0;
+        tombstones = 0;
+        newTable(newTableSize);
+
+        int mask = newTableSize - 1;
+        boolean isRecompressing = codec != null && codec.isTrained();
+        for (int offset = 0; offset < oldEnd; ) {
+            int length = recordLength(oldArena, offset);
+            if (isLive(oldArena, oldChunks, oldTableSize, offset)) {
+                int hash = oldArena.getInt(offset);
+                int newOffset = -1;
+                if (isRecompressing && (oldArena.getInt(offset + 8) & COMPRESSED) == 0) {
+                    int wordLength = oldArena.getInt(offset + 4);
+                    byte[] encoded = codec.encode(bytes(oldArena, offset + HEADER_SIZE + wordLength,
+                            oldArena.getInt(offset + 8)));
+                    if (encoded != null) {
+                        newOffset = append(hash, bytes(oldArena, offset + HEADER_SIZE, wordLength), encoded, true);
+                    }
+                }
+                if (newOffset < 0) {
+                    newOffset = arenaEnd;
+                    ByteBuffer record = oldArena.duplicate();
+                    record.position(offset).limit(offset + length);
+                    ByteBuffer target = arena.duplicate();
+                    target.position(newOffset);
+                    target.put(record);
+                    arenaEnd += length;
+                }
+
+                int slot = hash & mask;
+                while (slotOffset(chunks, slot) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                setSlot(slot, newOffset + 1, hash);
+            }
+            offset += length;
+        }
+    }
+
+    /**
+     * start an empty table, owned by the working copy
+     */
+    private void newTable(int newTableSize) {
+        tableSize = newTableSize;
+        int chunkCount = Math.max(1, newTableSize / CHUNK_SLOTS);
+        int chunkSlots = Math.min(newTableSize, CHUNK_SLOTS);
+        chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = allocate(chunkSlots * SLOT_SIZE);
+        }
+        ownedChunks = new boolean[chunkCount];
+        Arrays.fill(ownedChunks, true);
+        ownsChunkArray = true;
+    }
+
+    /**
+     * write a slot of the working copy, copying its chunk first if a published version shares it
+     */
+    private void setSlot(int slot, int offset, int hash) {
+        if (!ownsChunkArray) {
+            chunks = chunks.clone();
+            ownedChunks = new boolean[chunks.length];
+            ownsChunkArray = true;
+        }
+        int chunk = slot / CHUNK_SLOTS;
+        if (!ownedChunks[chunk]) {
+            ByteBuffer source = chunks[chunk].duplicate();
+            source.clear();
+            ByteBuffer copy = allocate(source.capacity());
+            copy.put(source);
+            chunks[chunk] = copy;
+            ownedChunks[chunk] = true;
+        }
+        int position = (slot % CHUNK_SLOTS) * SLOT_SIZE;
+        chunks[chunk].putInt(position, offset);
+        chunks[chunk].putInt(position + 4, hash);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * probe for a word, comparing the stored UTF-8 bytes in place
+     * @return slot index, -1 if absent
+     */
+    private static int find(ByteBuffer arena, ByteBuffer[] chunks, int tableSize, String word) {
+        int hash = hash(word);
+        int mask = tableSize - 1;
+        for (int slot = hash & mask; slotOffset(chunks, slot) != EMPTY; slot = (slot + 1) & mask) {
+            int offset = slotOffset(chunks, slot);
+            if (offset > 0 && slotHash(chunks, slot) == hash && wordEquals(arena, offset - 1, word)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * whether the table still points at a record, found through the hash stored in the record
+     */
+    private static boolean isLive(ByteBuffer arena, ByteBuffer[] chunks, int tableSize, int offset) {
+        int mask = tableSize - 1;
+        for (int slot = arena.getInt(offset) & mask; slotOffset(chunks, slot) != EMPTY; slot = (slot + 1) & mask) {
+            if (slotOffset(chunks, slot) == offset + 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * compare a stored word with a string without decoding it
+     */
+    private static boolean wordEquals(ByteBuffer arena, int offset, String word) {
+        int position = offset + HEADER_SIZE;
+        int end = position + arena.getInt(offset + 4);
+        int length = word.length();
+        for (int i = 0; i < length; i++) {
+            int c = word.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < length
+                    && Character.isLowSurrogate(word.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, word.charAt(++i));
+            }
+
+            if (c < 0x80) {
+                if (position + 1 > end || arena.get(position++) != (byte) c) {
+                    return false;
+                }
+            } else if (c < 0x800) {
+                if (position + 2 > end
+                        || arena.get(position++) != (byte) (0xc0 | (c >> 6))
+                        || arena.get(position++) != (byte) (0x80 | (c & 0x3f))) {
+                    return false;
+                }
+            } else if (c < 0x10000) {
+                if (position + 3 > end
+                        || arena.get(position++) != (byte) (0xe0 | (c >> 12))
+                        || arena.get(position++) != (byte) (0x80 | ((c >> 6) & 0x3f))
+                        || arena.get(position++) != (byte) (0x80 | (c & 0x3f))) {
+                    return false;
+                }
+            } else {
+                if (position + 4 > end
+                        || arena.get(position++) != (byte) (0xf0 | (c >> 18))
+                        || arena.get(position++) != (byte) (0x80 | ((c >> 12) & 0x3f))
+                        || arena.get(position++) != (byte) (0x80 | ((c >> 6) & 0x3f))
+                        || arena.get(position++) != (byte) (0x80 | (c & 0x3f))) {
+                    return false;
+                }
+            }
+        }
+        return position == end;
+    }
+
+    private static String decode(ByteBuffer arena, int offset, int length) {
+        if (arena.hasArray()) {
+            return new String(arena.array(), arena.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        return new String(bytes(arena, offset, length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * the description of a record, inflated if it is compressed
+     */
+    private static String decodeDes(ByteBuffer arena, int offset, DescriptionCodec codec) {
+        int position = offset + HEADER_SIZE + arena.getInt(offset + 4);
+        int length = arena.getInt(offset + 8);
+        if ((length & COMPRESSED) == 0) {
+            return decode(arena, position, length);
+        }
+        length &= ~COMPRESSED;
+        if (arena.hasArray()) {
+            return codec.decode(arena.array(), arena.arrayOffset() + position, length);
+        }
+        return codec.decode(bytes(arena, position, length), 0, length);
+    }
+
+    private static byte[] bytes(ByteBuffer arena, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = arena.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return bytes;
+    }
+
+    private static int slotOffset(ByteBuffer[] chunks, int slot) {
+        return chunks[slot / CHUNK_SLOTS].getInt((slot % CHUNK_SLOTS) * SLOT_SIZE);
+    }
+
+    private static int slotHash(ByteBuffer[] chunks, int slot) {
+        return chunks[slot / CHUNK_SLOTS].getInt((slot % CHUNK_SLOTS) * SLOT_SIZE + 4);
+    }
+
+    private static int recordLength(ByteBuffer arena, int offset) {
+        return HEADER_SIZE + arena.getInt(offset + 4) + (arena.getInt(offset + 8) & ~COMPRESSED);
+    }
+
+    /**
+     * spread String.hashCode, which is cached by the string itself
+     */
+    private static int hash(String word) {
+        int h = word.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * one published version of the store, never changes and is safe to share between threads
+     */
+    public static class Snapshot {
+        private final long version;
+        private final ByteBuffer arena;
+        private final int arenaEnd;
+        private final ByteBuffer[] chunks;
+        private final int tableSize;
+        private final int size;
+        private final DescriptionCodec codec;
+        // writer bookkeeping, restored by discard()
+        private int garbageBytes;
+        private int tombstones;
+
+        Snapshot(long version, ByteBuffer arena, int arenaEnd, ByteBuffer[] chunks, int tableSize, int size,
+                 DescriptionCodec codec) {
+            this.version = version;
+            this.arena = arena;
+            this.arenaEnd = arenaEnd;
+            this.chunks = chunks;
+            this.tableSize = tableSize;
+            this.size = size;
+            this.codec = codec;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param word word
+         * @return whether the word is stored
+         */
+        public boolean contains(String word) {
+            return find(arena, chunks, tableSize, word) >= 0;
+        }
+
+        /**
+         * @param word word
+         * @return description of the word, null if absent
+         */
+        public String get(String word) {
+            int slot = find(arena, chunks, tableSize, word);
+            if (slot < 0) {
+                return null;
+            }
+            return decodeDes(arena, slotOffset(chunks, slot) - 1, codec);
+        }
+
+        /**
+         * @return all words in insertion order
+         */
+        public List<String> words() {
+            List<String> words = new ArrayList<>(size);
+            for (int offset = 0; offset < arenaEnd; offset += recordLength(arena, offset)) {
+                if (isLive(arena, chunks, tableSize, offset)) {
+                    words.add(decode(arena, offset + HEADER_SIZE, arena.getInt(offset + 4)));
+                }
+            }
+            return words;
+        }
+
+        /**
+         * visit all words and descriptions in insertion order
+         * @param consumer receives word and description
+         */
+        public void forEach(BiConsumer<String, String> consumer) {
+            for (int offset = 0; offset < arenaEnd; offset += recordLength(arena, offset)) {
+                if (isLive(arena, chunks, tableSize, offset)) {
+                    consumer.accept(decode(arena, offset + HEADER_SIZE, arena.getInt(offset + 4)),
+                            decodeDes(arena, offset, codec));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * compression of descriptions
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * deflates every description on its own against a preset dictionary shared by all of them,
+ * so short texts compress well and can be inflated one at a time.
+ *
+ * the shared dictionary is trained on the first descriptions it sees: their most frequent
+ * words and phrases, the most valuable ones last, where deflate reaches them with the shortest distances.
+ * until then descriptions are left as they are.
+ *
+ * encoded layout: [original length: varint][raw deflate stream]
+ */
+public class DescriptionCodec {
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+    private static final int SAMPLE_COUNT = 2000;
+    private static final int SAMPLE_BYTES = 256 * 1024;
+    private static final int MAX_PHRASE_WORDS = 3;
+
+    private static final ThreadLocal<Deflater> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    // samples collected by the single writer until the dictionary is trained
+    private List<byte[]> samples = new ArrayList<>();
+    private int sampleBytes;
+    private volatile byte[] dictionary;
+
+    public boolean isTrained() {
+        return dictionary != null;
+    }
+
+    /**
+     * compress a description, called by the single writer of the store
+     * @param des UTF-8 description
+     * @return encoded description, null if it should be stored as it is
+     */
+    public byte[] encode(byte[] des) {
+        byte[] preset = dictionary;
+        if (preset == null) {
+            samples.add(des);
+            sampleBytes += des.length;
+            if (samples.size() >= SAMPLE_COUNT || sampleBytes >= SAMPLE_BYTES) {
+                dictionary = train(samples);
+                samples = null;
+            }
+            return null;
+        }
+
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setDictionary(preset);
+        deflater.setInput(des);
+        deflater.finish();
+        byte[] buffer = new byte[des.length + 16];
+        int position = writeVarint(buffer, 0, des.length);
+        while (!deflater.finished()) {
+            if (position == buffer.length) {
+                // didn't compress
+                return null;
+            }
+            position += deflater.deflate(buffer, position, buffer.length - position);
+        }
+        if (position >= des.length) {
+            return null;
+        }
+        byte[] encoded = new byte[position];
+        System.arraycopy(buffer, 0, encoded, 0, position);
+        return encoded;
+    }
+
+    /**
+     * @param encoded buffer holding an encoded description
+     * @param offset start of the encoded description
+     * @param length length of the encoded description
+     * @return description
+     */
+    public String decode(byte[] encoded, int offset, int length) {
+        int originalLength = 0;
+        int position = offset;
+        for (int shift = 0; ; shift += 7) {
+            byte b = encoded[position++];
+            originalLength |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        inflater.setInput(encoded, position, offset + length - position);
+        byte[] des = new byte[originalLength];
+        try {
+            int inflated = 0;
+            while (inflated < originalLength) {
+                int count = inflater.inflate(des, inflated, originalLength - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("corrupt compressed description");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt compressed description", e);
+        }
+        return new String(des, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * pick the phrases of up to three words that save the most bytes, by count times length
+     */
+    private static byte[] train(List<byte[]> samples) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            String[] words = new String(sample, StandardCharsets.UTF_8).split(" ");
+            for (int i = 0; i < words.length; i++) {
+                StringBuilder phrase = new StringBuilder();
+                for (int j = i; j < Math.min(words.length, i + MAX_PHRASE_WORDS); j++) {
+                    phrase.append(words[j]).append(' ');
+                    counts.merge(phrase.toString(), 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> phrases = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1 && entry.getKey().length() > 3) {
+                phrases.add(entry);
+            }
+        }
+        phrases.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(),
+                (long) a.getValue() * a.getKey().length()));
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> phrase : phrases) {
+            byte[] bytes = phrase.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > DICTIONARY_SIZE) {
+                break;
+            }
+            chosen.add(bytes);
+            size += bytes.length;
+        }
+
+        byte[] trained = new byte[size];
+        int position = 0;
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            byte[] bytes = chosen.get(i);
+            System.arraycopy(bytes, 0, trained, position, bytes.length);
+            position += bytes.length;
+        }
+        return trained;
+    }
+
+    private static int writeVarint(byte[] buffer, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * inverted index over word descriptions, for reverse lookup
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * maps description terms to the words whose description contains them,
+ * posting lists are kept in sorted primitive int arrays of word ids.
+ *
+ * per word only its UTF-8 bytes are kept, indexed by id; the ids of removed words are reused,
+ * and a word is found again through the shortest posting list of its description's terms,
+ * so a removal needs the description the word was added with.
+ */
+public class DescriptionIndex {
+    private static final int INITIAL_POSTING_CAPACITY = 2;
+    private static final int INITIAL_WORD_CAPACITY = 1024;
+    private static final int MIN_TERM_LENGTH = 2;
+
+    // word id -> UTF-8 word, null for a free id
+    private byte[][] words = new byte[INITIAL_WORD_CAPACITY][];
+    // ids below this were handed out, free ones are on the stack below
+    private int wordEnd;
+    private int[] freeIds = new int[0];
+    private int freeCount;
+    private int documentCount;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * index the description of a word that isn't in the index,
+     * a description without terms isn't indexed
+     * @param word word
+     * @param des description
+     */
+    public void add(String word, String des) {
+        Map<String, Integer> frequencies = termFrequencies(des);
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int id = newId();
+            words[id] = word.getBytes(StandardCharsets.UTF_8);
+            documentCount++;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new Postings())
+                        .insert(id, entry.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * drop a word from the index
+     * @param word word
+     * @param des the description it was added with
+     */
+    public void remove(String word, String des) {
+        Map<String, Integer> frequencies = termFrequencies(des);
+        if (frequencies.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int id = find(word, frequencies.keySet());
+            if (id < 0) {
+                return;
+            }
+            for (String term : frequencies.keySet()) {
+                Postings list = postings.get(term);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(term);
+                }
+            }
+            words[id] = null;
+            documentCount--;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2 + 1);
+            }
+            freeIds[freeCount++] = id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * find words whose description mentions the query terms,
+     * ranked by tf-idf, best match first
+     *
+     * @param query free text query
+     * @param page page number, starting from 0
+     * @param size page size
+     * @return one page of matching words
+     */
+    public Result search(String query, int page, int size) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Double> scores = new HashMap<>();
+            for (String term : termFrequencies(query).keySet()) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                double idf = Math.log(1.0 + (double) documentCount / list.size);
+                for (int i = 0; i < list.size; i++) {
+                    scores.merge(list.ids[i], list.frequencies[i] * idf, Double::sum);
+                }
+            }
+
+            List<Scored> ranked = new ArrayList<>(scores.size());
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                ranked.add(new Scored(new String(words[entry.getKey()], StandardCharsets.UTF_8), entry.getValue()));
+            }
+            ranked.sort((a, b) -> {
+                int byScore = Double.compare(b.score, a.score);
+                return byScore != 0 ? byScore : a.word.compareTo(b.word);
+            });
+
+            List<String> pageWords = new ArrayList<>();
+            // a page past the last one is empty, the offset is a long so a large page can't wrap around
+            long from = (long) Math.max(0, page) * size;
+            int end = (int) Math.min(ranked.size(), from + size);
+            for (int i = (int) Math.min(from, ranked.size()); i < end; i++) {
+                pageWords.add(ranked.get(i).word);
+            }
+            return new Result(ranked.size(), pageWords);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * split text into lower case alphanumeric terms and count them
+     * @param text text
+     * @return term -> frequency
+     */
+    static Map<String, Integer> termFrequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        for (String term : text.toLowerCase().split("[^\\p{L}\\p{Nd}]+")) {
+            if (term.length() >= MIN_TERM_LENGTH) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    private int newId() {
+        if (freeCount > 0) {
+            return freeIds[--freeCount];
+        }
+        if (wordEnd == words.length) {
+            words = Arrays.copyOf(words, wordEnd * 2);
+        }
+        return wordEnd++;
+    }
+
+    /**
+     * @param terms terms of the word's description
+     * @return id of the word, -1 if it isn't indexed
+     */
+    private int find(String word, Iterable<String> terms) {
+        Postings shortest = null;
+        for (String term : terms) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                return -1;
+            }
+            if (shortest == null || list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+        byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < shortest.size; i++) {
+            if (Arrays.equals(words[shortest.ids[i]], wordBytes)) {
+                return shortest.ids[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * sorted word ids with their term frequencies
+     */
+    private static class Postings {
+        private int[] ids = new int[INITIAL_POSTING_CAPACITY];
+        private int[] frequencies = new int[INITIAL_POSTING_CAPACITY];
+        private int size;
+
+        /**
+         * a new id goes last, a reused one into its sorted position
+         */
+        private void insert(int id, int frequency) {
+            if (size == ids.length) {
+                // grow by half, most lists stay short
+                int capacity = size + Math.max(INITIAL_POSTING_CAPACITY, size >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                frequencies = Arrays.copyOf(frequencies, capacity);
+            }
+            int i = size == 0 || ids[size - 1] < id ? size : -Arrays.binarySearch(ids, 0, size, id) - 1;
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            System.arraycopy(frequencies, i, frequencies, i + 1, size - i);
+            ids[i] = id;
+            frequencies[i] = frequency;
+            size++;
+        }
+
+        private boolean remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(frequencies, i + 1, frequencies, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+
+    private static class Scored {
+        private final String word;
+        private final double score;
+
+        Scored(String word, double score) {
+            this.word = word;
+            this.score = score;
+        }
+    }
+
+    /**
+     * one page of a ranked search
+     */
+    public static class Result {
+        private final int total;
+        private final List<String> words;
+
+        Result(int total, List<String> words) {
+            this.total = total;
+            this.words = words;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public List<String> getWords() {
+            return words;
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * in-memory view of a dictionary file
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * serves lookups from memory and writes mutations through to the file.
+ * every write publishes a new immutable Version, readers pin one without locking.
+ * concurrent adds and deletes are group committed, one file write and version for all of them.
+ */
+public class Dictionary {
+    private static final int MAX_CACHED_QUERIES = 64;
+    // recent versions kept for clients paging through a list
+    private static final int RETAINED_VERSIONS = 16;
+
+    private final String filePath;
+    private final CompactWordStore store;
+    // built from the current version on the first define-search, null until then
+    private volatile DescriptionIndex descriptionIndex;
+    private final DictionaryStats stats = new DictionaryStats();
+    // serializes writers, readers never take it
+    private final Object writeLock = new Object();
+    // adds and deletes waiting to be committed, applied together by one writer at a time
+    private final Queue<Mutation> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isCommitting = new AtomicBoolean();
+    private final Map<Long, Version> retainedVersions = new ConcurrentHashMap<>();
+    // numbers of the retained versions, oldest first, changed by the writer only
+    private final Queue<Long> retainedNumbers = new ArrayDeque<>();
+    private volatile Version current;
+    // modification time of the file as this dictionary last saw or wrote it
+    private volatile long fileStamp;
+    private boolean isClosed;
+
+    private Dictionary(String filePath, boolean offHeap, boolean compressed) {
+        this.filePath = filePath;
+        this.store = new CompactWordStore(offHeap, compressed);
+    }
+
+    /**
+     * whether the file was changed by someone else since it was loaded or written
+     */
+    public boolean isFileChanged() {
+        return new File(filePath).lastModified() != fileStamp;
+    }
+
+    /**
+     * parse a dictionary file into memory, with the configured storage
+     * @param path file path
+     * @return dictionary, null if the file can't be read or parsed
+     */
+    public static Dictionary load(String path) {
+        return load(path, ServerConfig.isOffHeapStorage(), ServerConfig.isCompressed());
+    }
+
+    /**
+     * parse a dictionary file into memory
+     * @param path file path
+     * @param offHeap keep entries in direct memory
+     * @param compressed compress descriptions in memory
+     * @return dictionary, empty if the file doesn't exist yet,
+     *         null if the file can't be read or parsed, rather than the words before the error
+     */
+    public static Dictionary load(String path, boolean offHeap, boolean compressed) {
+        long stamp = new File(path).lastModified();
+        Dictionary dictionary = new Dictionary(path, offHeap, compressed);
+        try {
+            // stream the file straight into the store, without building a document
+            DictionaryTransfer.readXml(Paths.get(path), (word, des) -> {
+                if (dictionary.store.put(word, des)) {
+                    dictionary.stats.add(word, des);
+                }
+            });
+        } catch (NoSuchFileException e) {
+            // written by the first change
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        dictionary.publish();
+        dictionary.fileStamp = stamp;
+        return dictionary;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return latest version
+     */
+    public Version current() {
+        return current;
+    }
+
+    /**
+     * @param number version number, unique across dictionaries, reloads and restarts
+     * @return a recent version of this dictionary, null if it is no longer retained
+     */
+    public Version version(long number) {
+        Version latest = current;
+        return latest.getNumber() == number ? latest : retainedVersions.get(number);
+    }
+
+    /**
+     * add a word to the file and memory
+     * @return the version with the word, null if the word exists, has characters xml can't hold,
+     *         or the file can't be written
+     */
+    public Version add(String word, String des) {
+        if (current.contains(word) || !parseUtil.isXmlText(word) || !parseUtil.isXmlText(des)) {
+            return null;
+        }
+        return commit(new Mutation(word, des));
+    }
+
+    /**
+     * delete a word from the file and memory
+     * @return the version without the word, null if the word doesn't exist or the file can't be written
+     */
+    public Version delete(String word) {
+        if (!current.contains(word)) {
+            return null;
+        }
+        return commit(new Mutation(word, null));
+    }
+
+    /**
+     * queue a mutation for a group commit: one writer at a time becomes the committer and
+     * applies every queued mutation with a single file write and publish, the others wait
+     * on their own mutation. writers of different words share the cost of a write
+     * instead of taking turns, and a writer whose mutation is done returns without any lock
+     *
+     * @return the version with the mutation, null if it didn't apply or the file can't be written
+     */
+    private Version commit(Mutation mutation) {
+        pending.add(mutation);
+        while (!mutation.isDone()) {
+            if (isCommitting.compareAndSet(false, true)) {
+                try {
+                    synchronized (writeLock) {
+                        commitPending();
+                    }
+                } finally {
+                    isCommitting.set(false);
+                }
+                // mutations queued during the commit, their writers may be waiting for a committer
+                Mutation next = pending.peek();
+                if (next != null) {
+                    next.wake();
+                }
+            } else {
+                mutation.await();
+            }
+        }
+        return mutation.getVersion();
+    }
+
+    /**
+     * apply the queued mutations in order, called with the write lock.
+     * if the store or the file fails, none of the batch is kept and every writer of it gets null
+     */
+    private void commitPending() {
+        Version previous = current;
+        List<Mutation> batch = new ArrayList<>();
+        Mutation next;
+        while ((next = pending.poll()) != null) {
+            batch.add(next);
+        }
+        try {
+            applyBatch(previous, batch);
+        } catch (RuntimeException e) {
+            // e.g. the store is full
+            e.printStackTrace();
+            store.discard();
+        } finally {
+            for (Mutation mutation : batch) {
+                mutation.complete(null);
+            }
+        }
+    }
+
+    /**
+     * apply a batch to the store, write it to the file once and publish it,
+     * the store's changes are discarded if the file can't be written
+     */
+    private void applyBatch(Version previous, List<Mutation> batch) {
+        // words added and deleted by the batch, and the descriptions of the deleted ones
+        Map<String, String> added = new LinkedHashMap<>();
+        Set<String> deleted = new HashSet<>();
+        List<Mutation> applied = new ArrayList<>();
+        for (Mutation mutation : batch) {
+            String word = mutation.word;
+            if (isClosed) {
+                break;
+            }
+            if (mutation.des != null) {
+                if (store.put(word, mutation.des)) {
+                    added.put(word, mutation.des);
+                    applied.add(mutation);
+                }
+            } else if (store.remove(word)) {
+                String des = added.remove(word);
+                if (des == null) {
+                    des = previous.search(word);
+                    deleted.add(word);
+                }
+                mutation.deletedDes = des;
+                applied.add(mutation);
+            }
+        }
+
+        if (!applied.isEmpty()) {
+            if (write(consumer -> {
+                previous.forEach((word, des) -> {
+                    if (!deleted.contains(word)) {
+                        consumer.accept(word, des);
+                    }
+                });
+                added.forEach(consumer);
+            })) {
+                fileStamp = new File(filePath).lastModified();
+                DescriptionIndex index = descriptionIndex;
+                for (Mutation mutation : applied) {
+                    if (mutation.des != null) {
+                        if (index != null) {
+                            index.add(mutation.word, mutation.des);
+                        }
+                        stats.add(mutation.word, mutation.des);
+                    } else {
+                        if (index != null) {
+                            index.remove(mutation.word, mutation.deletedDes);
+                        }
+                        stats.remove(mutation.word, mutation.deletedDes);
+                    }
+                }
+                Version version = publish();
+                for (Mutation mutation : applied) {
+                    mutation.complete(version);
+                }
+            } else {
+                store.discard();
+            }
+        }
+    }
+
+    /**
+     * add many words at once, rewriting the file a single time,
+     * words that already exist or have characters xml can't hold are skipped
+     *
+     * @param entries word -> description
+     * @return number of words added
+     */
+    public int importEntries(Map<String, String> entries) throws IOException {
+        synchronized (writeLock) {
+            if (isClosed) {
+                throw new IOException("dictionary is closed");
+            }
+            Version previous = current;
+            List<String> added = new ArrayList<>();
+            try {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    if (parseUtil.isXmlText(entry.getKey()) && parseUtil.isXmlText(entry.getValue())
+                            && store.put(entry.getKey(), entry.getValue())) {
+                        added.add(entry.getKey());
+                    }
+                }
+                if (added.isEmpty()) {
+                    return 0;
+                }
+                DictionaryFile.write(Paths.get(filePath), consumer -> {
+                    previous.forEach(consumer);
+                    for (String word : added) {
+                        consumer.accept(word, entries.get(word));
+                    }
+                });
+            } catch (IOException e) {
+                store.discard();
+                throw e;
+            } catch (RuntimeException e) {
+                // e.g. the store is full, none of the entries is kept
+                store.discard();
+                throw new IOException(e.getMessage(), e);
+            }
+            fileStamp = new File(filePath).lastModified();
+            DescriptionIndex index = descriptionIndex;
+            for (String word : added) {
+                if (index != null) {
+                    index.add(word, entries.get(word));
+                }
+                stats.add(word, entries.get(word));
+            }
+            publish();
+            return added.size();
+        }
+    }
+
+    /**
+     * stream all entries of the current version out in a data format
+     * @param out writer
+     * @param format data format
+     */
+    public void export(Writer out, DictionaryTransfer.Format format) throws IOException {
+        DictionaryTransfer.write(out, format, current::forEach);
+    }
+
+    /**
+     * wait for a write in progress to reach the file, and refuse any later one
+     */
+    public void close() {
+        synchronized (writeLock) {
+            isClosed = true;
+        }
+    }
+
+    /**
+     * @return word count, bytes and histograms, kept up to date by every change
+     */
+    public Map<String, Object> getStats() {
+        return stats.getStats();
+    }
+
+    /**
+     * the description index is built on the first call, a dictionary that is never
+     * searched by description doesn't keep one
+     */
+    public DescriptionIndex.Result defineSearch(String query, int page, int size) {
+        DescriptionIndex index = descriptionIndex;
+        if (index == null) {
+            synchronized (writeLock) {
+                index = descriptionIndex;
+                if (index == null) {
+                    // the current version doesn't change while the write lock is held
+                    index = new DescriptionIndex();
+                    current.forEach(index::add);
+                    descriptionIndex = index;
+                }
+            }
+        }
+        return index.search(query, page, size);
+    }
+
+    /**
+     * replace the file with the given entries, the file is left as it was if this fails
+     * @return whether the file was written
+     */
+    private boolean write(Consumer<BiConsumer<String, String>> entries) {
+        try {
+            DictionaryFile.write(Paths.get(filePath), entries);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private Version publish() {
+        Version version = new Version(store.publish());
+        current = version;
+        retainedVersions.put(version.getNumber(), version);
+        retainedNumbers.add(version.getNumber());
+        if (retainedNumbers.size() > RETAINED_VERSIONS) {
+            retainedVersions.remove(retainedNumbers.remove());
+        }
+        return version;
+    }
+
+    /**
+     * an add, or a delete if there is no description, waiting to be committed
+     */
+    private static class Mutation {
+        private final String word;
+        private final String des;
+        // used by the committer only
+        private String deletedDes;
+        // guarded by the mutation
+        private Version version;
+        private boolean isDone;
+        private boolean isWoken;
+
+        Mutation(String word, String des) {
+            this.word = word;
+            this.des = des;
+        }
+
+        synchronized boolean isDone() {
+            return isDone;
+        }
+
+        synchronized Version getVersion() {
+            return version;
+        }
+
+        /**
+         * @param version the version with the mutation, null if it didn't apply. only the first call counts
+         */
+        synchronized void complete(Version version) {
+            if (!isDone) {
+                this.version = version;
+                isDone = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * let the writer try to become the committer
+         */
+        synchronized void wake() {
+            isWoken = true;
+            notifyAll();
+        }
+
+        /**
+         * wait until the mutation is done, or the writer is woken to commit it.
+         * not interruptible, the mutation may be written anyway
+         */
+        synchronized void await() {
+            boolean isInterrupted = false;
+            while (!isDone && !isWoken) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            isWoken = false;
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * an immutable version of the dictionary, with its word lists computed on demand
+     */
+    public static class Version {
+        private final CompactWordStore.Snapshot entries;
+        private volatile WordList wordList;
+
+        Version(CompactWordStore.Snapshot entries) {
+            this.entries = entries;
+        }
+
+        public long getNumber() {
+            return entries.getVersion();
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        public boolean contains(String word) {
+            return entries.contains(word);
+        }
+
+        /**
+         * @param word word
+         * @return description, empty string if absent
+         */
+        public String search(String word) {
+            String des = entries.get(word);
+            return des == null ? "" : des;
+        }
+
+        /**
+         * visit all words and descriptions in file order
+         * @param consumer receives word and description
+         */
+        public void forEach(BiConsumer<String, String> consumer) {
+            entries.forEach(consumer);
+        }
+
+        /**
+         * @return all words in file order, unmodifiable
+         */
+        public List<String> words() {
+            return wordList().all;
+        }
+
+        /**
+         * filtered and sorted words, results are cached with the version
+         * @param query list query
+         * @return unmodifiable list of words
+         */
+        public List<String> list(WordQuery query) {
+            WordList list = wordList();
+            if (query.isPlain()) {
+                return list.all;
+            }
+            String key = query.key();
+            List<String> result = list.results.get(key);
+            if (result == null) {
+                result = query.apply(list.words);
+                if (list.results.size() >= MAX_CACHED_QUERIES) {
+                    list.results.clear();
+                }
+                list.results.putIfAbsent(key, result);
+            }
+            return result;
+        }
+
+        /**
+         * the word list is copied out of the store once per version
+         */
+        private WordList wordList() {
+            WordList list = wordList;
+            if (list == null) {
+                list = new WordList(entries.words().toArray(new String[0]));
+                wordList = list;
+            }
+            return list;
+        }
+    }
+
+    /**
+     * immutable word list of one version, with the query results computed from it
+     */
+    private static class WordList {
+        private final String[] words;
+        private final List<String> all;
+        private final Map<String, List<String>> results = new ConcurrentHashMap<>();
+
+        WordList(String[] words) {
+            this.words = words;
+            this.all = Collections.unmodifiableList(Arrays.asList(words));
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * the named dictionaries served by one server
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * loads a dictionary on its first request, and unloads the least recently used ones
+ * once more than the configured number are in memory. the default dictionary stays loaded.
+ */
+public class DictionaryCatalog {
+    public static final String DEFAULT_NAME = "default";
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxLoaded;
+    // name and path of a dictionary that was swapped for a new load of its file
+    private final BiConsumer<String, String> onReloaded;
+    // name of a dictionary that was taken out of memory
+    private final Consumer<String> onUnloaded;
+    private final Object evictionLock = new Object();
+    private volatile boolean isWatching;
+    private volatile boolean isClosed;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxLoaded dictionaries besides the default one kept in memory
+     * @param onReloaded called with the name and path of a reloaded dictionary
+     * @param onUnloaded called with the name of an unloaded dictionary
+     */
+    public DictionaryCatalog(int maxLoaded, BiConsumer<String, String> onReloaded, Consumer<String> onUnloaded) {
+        this.maxLoaded = Math.max(1, maxLoaded);
+        this.onReloaded = onReloaded;
+        this.onUnloaded = onUnloaded;
+    }
+
+    /**
+     * serve a dictionary file under a name, it is loaded on its first request
+     * @param name dictionary name
+     * @param path file path
+     */
+    public void register(String name, String path) {
+        Entry previous = entries.put(name, new Entry(name, path));
+        if (previous != null) {
+            unload(previous);
+        }
+    }
+
+    /**
+     * @return registered names, sorted
+     */
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    public boolean isLoaded(String name) {
+        return peek(name) != null;
+    }
+
+    /**
+     * the dictionary of a name, loaded in the calling thread if it isn't in memory
+     * @param name dictionary name
+     * @return dictionary, null if the name is unknown or its file is invalid
+     */
+    public Dictionary get(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        Dictionary dictionary = entry.dictionary;
+        if (dictionary != null) {
+            return dictionary;
+        }
+        synchronized (entry) {
+            if (entry.dictionary == null) {
+                if (isClosed || !DictionaryFile.recover(entry.path)) {
+                    return null;
+                }
+                entry.dictionary = Dictionary.load(entry.path);
+                if (entry.dictionary == null && DictionaryFile.restoreSnapshot(entry.path)) {
+                    // passed its check, but doesn't parse
+                    entry.dictionary = Dictionary.load(entry.path);
+                }
+                if (entry.dictionary == null) {
+                    return null;
+                }
+                loads.increment();
+                if (isWatching) {
+                    entry.watch();
+                }
+            }
+            dictionary = entry.dictionary;
+        }
+        evictColdest();
+        return dictionary;
+    }
+
+    /**
+     * @param name dictionary name
+     * @return the dictionary of a name if it is in memory, without loading it
+     */
+    public Dictionary peek(String name) {
+        Entry entry = entries.get(name);
+        return entry == null ? null : entry.dictionary;
+    }
+
+    /**
+     * load a dictionary file and swap it in for a name. the previous dictionary is closed first,
+     * like on unload, so a write still in progress reaches the file before it is loaded and
+     * no later write to the previous dictionary can overwrite the reloaded file.
+     * requests in flight read the previous dictionary, their writes are refused
+     *
+     * @param name dictionary name
+     * @param path file path, may differ from the current one
+     * @return false if the name is unknown or the file is invalid, the current dictionary is kept
+     *         unless the file can't be loaded after it was closed, then the next request loads it again
+     */
+    public boolean reload(String name, String path) {
+        Entry entry = entries.get(name);
+        if (entry == null || isClosed || !DictionaryFile.recover(path)) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.dictionary != null) {
+                entry.dictionary.close();
+            }
+            Dictionary dictionary = Dictionary.load(path);
+            if (dictionary == null) {
+                // changed since it was validated
+                entry.dictionary = null;
+                entry.stopWatching();
+                return false;
+            }
+            boolean isMoved = !path.equals(entry.path);
+            entry.path = path;
+            entry.dictionary = dictionary;
+            entry.lastUsed = System.nanoTime();
+            if (isWatching && (entry.watcher == null || isMoved)) {
+                entry.watch();
+            }
+        }
+        onReloaded.accept(name, path);
+        evictColdest();
+        return true;
+    }
+
+    /**
+     * reload the loaded dictionaries when their files are changed by another program
+     * @param isWatching whether to watch
+     */
+    public void setWatching(boolean isWatching) {
+        this.isWatching = isWatching;
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (isWatching && entry.dictionary != null) {
+                    entry.watch();
+                } else if (!isWatching) {
+                    entry.stopWatching();
+                }
+            }
+        }
+    }
+
+    /**
+     * stop watching, wait for writes in progress and refuse any later one
+     */
+    public void close() {
+        isClosed = true;
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                entry.stopWatching();
+                if (entry.dictionary != null) {
+                    entry.dictionary.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return counters for sizing how many dictionaries are kept loaded
+     */
+    public Map<String, Object> getMetrics() {
+        int loaded = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.dictionary != null) {
+                loaded++;
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("dictionaries", entries.size());
+        metrics.put("loadedDictionaries", loaded);
+        metrics.put("dictionaryLoads", loads.sum());
+        metrics.put("dictionaryEvictions", evictions.sum());
+        return metrics;
+    }
+
+    /**
+     * unload the least recently used dictionaries beyond the limit
+     */
+    private void evictColdest() {
+        synchronized (evictionLock) {
+            while (true) {
+                Entry coldest = null;
+                int loaded = 0;
+                for (Entry entry : entries.values()) {
+                    if (entry.dictionary == null || entry.name.equals(DEFAULT_NAME)) {
+                        continue;
+                    }
+                    loaded++;
+                    if (coldest == null || entry.lastUsed < coldest.lastUsed) {
+                        coldest = entry;
+                    }
+                }
+                if (loaded <= maxLoaded) {
+                    return;
+                }
+                unload(coldest);
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * take a dictionary out of memory, a write still in progress is finished first,
+     * and a request still holding the dictionary can read but not write it
+     */
+    private void unload(Entry entry) {
+        Dictionary dictionary;
+        synchronized (entry) {
+            dictionary = entry.dictionary;
+            entry.dictionary = null;
+            entry.stopWatching();
+        }
+        if (dictionary != null) {
+            dictionary.close();
+            onUnloaded.accept(entry.name);
+        }
+    }
+
+    private class Entry {
+        private final String name;
+        private volatile String path;
+        private volatile Dictionary dictionary;
+        private volatile long lastUsed = System.nanoTime();
+        // guarded by the entry
+        private DictionaryWatcher watcher;
+
+        Entry(String name, String path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        void watch() {
+            stopWatching();
+            watcher = new DictionaryWatcher(Paths.get(path), () -> {
+                Dictionary current = dictionary;
+                if (current != null && current.isFileChanged()) {
+                    reload(name, current.getFilePath());
+                }
+            });
+            try {
+                watcher.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+                watcher = null;
+            }
+        }
+
+        void stopWatching() {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * crash safe writes of dictionary files
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * a dictionary file is never truncated in place: the new content goes to a temp file next to it,
+ * which is synced and then renamed over the file, so a crash leaves either the old or the new file.
+ * the file before the last write is kept as a snapshot.
+ *
+ * the xml ends with a comment holding its length and crc32, so a file the server wrote
+ * is validated by its checksum instead of being parsed.
+ *
+ * files: [path] current, [path].tmp write in progress, [path].bak previous snapshot
+ */
+public class DictionaryFile {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SNAPSHOT_SUFFIX = ".bak";
+    private static final Pattern FOOTER = Pattern.compile("\n<!-- length=(\\d+) crc32=([0-9a-f]{8}) -->\n$");
+    // the footer is shorter than this
+    private static final int FOOTER_BYTES = 64;
+
+    public enum Check {
+        // the checksum matches
+        VALID,
+        // no checksum, e.g. written by hand or by an older server
+        UNCHECKED,
+        // the checksum doesn't match, the file was cut short or edited
+        CORRUPT,
+        MISSING
+    }
+
+    /**
+     * replace a dictionary file atomically
+     * @param path dictionary file
+     * @param entries calls its argument with every word and description
+     */
+    public static void write(Path path, Consumer<BiConsumer<String, String>> entries) throws IOException {
+        Path temp = sibling(path, TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream fileStream = Channels.newOutputStream(channel);
+            CRC32 crc = new CRC32();
+            Writer out = new BufferedWriter(new OutputStreamWriter(new CheckedOutputStream(fileStream, crc),
+                    StandardCharsets.UTF_8));
+            DictionaryTransfer.writeXml(out, entries);
+            out.flush();
+            String footer = String.format("\n<!-- length=%d crc32=%08x -->\n", channel.position(), crc.getValue());
+            fileStream.write(footer.getBytes(StandardCharsets.US_ASCII));
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        snapshot(path);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(path);
+    }
+
+    /**
+     * @param path dictionary file
+     * @return whether the file is intact, reading it without parsing
+     */
+    public static Check check(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return Check.MISSING;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, FOOTER_BYTES));
+            channel.read(tail, size - tail.capacity());
+            Matcher matcher = FOOTER.matcher(new String(tail.array(), StandardCharsets.US_ASCII));
+            if (!matcher.find()) {
+                return Check.UNCHECKED;
+            }
+            long length = Long.parseLong(matcher.group(1));
+            long footerStart = size - (tail.capacity() - matcher.start());
+            if (length != footerStart) {
+                return Check.CORRUPT;
+            }
+
+            CRC32 crc = new CRC32();
+            channel.position(0);
+            InputStream in = Channels.newInputStream(channel);
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return Check.CORRUPT;
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            return crc.getValue() == Long.parseLong(matcher.group(2), 16) ? Check.VALID : Check.CORRUPT;
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+            return Check.CORRUPT;
+        }
+    }
+
+    /**
+     * make sure a dictionary file can be loaded, restoring it from an interrupted write
+     * or from the snapshot if it is damaged.
+     * a file with a matching checksum isn't parsed, one without a checksum or
+     * with an outdated one (edited by hand) is accepted if it parses
+     *
+     * @param path dictionary file
+     * @return whether the file can be loaded
+     */
+    public static boolean recover(String path) {
+        Path file = Paths.get(path);
+        Path temp = sibling(file, TEMP_SUFFIX);
+        if (isLoadable(file)) {
+            return true;
+        }
+
+        try {
+            // a write synced but not renamed yet is the most recent content
+            if (check(temp) == Check.VALID) {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                syncDirectory(file);
+                System.err.println(path + ": recovered from an interrupted write");
+                return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return restoreSnapshot(path);
+    }
+
+    /**
+     * put the snapshot before the last write in place of a file.
+     * also for a file that passed its check but can't be loaded: a matching checksum
+     * only proves the file is what was written, not that it parses
+     *
+     * @param path dictionary file
+     * @return whether the snapshot was restored
+     */
+    public static boolean restoreSnapshot(String path) {
+        Path file = Paths.get(path);
+        Path snapshot = sibling(file, SNAPSHOT_SUFFIX);
+        if (!isLoadable(snapshot)) {
+            return false;
+        }
+        try {
+            Path temp = sibling(file, TEMP_SUFFIX);
+            Files.copy(snapshot, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory(file);
+            System.err.println(path + ": restored the snapshot before the last write");
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean isLoadable(Path path) {
+        Check check = check(path);
+        return check == Check.VALID || (check != Check.MISSING && parseUtil.isDictionaryFileLegal(path.toString()));
+    }
+
+    /**
+     * keep the current file as the snapshot, a hard link where the file system allows it
+     */
+    private static void snapshot(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Path snapshot = sibling(path, SNAPSHOT_SUFFIX);
+        Files.deleteIfExists(snapshot);
+        try {
+            Files.createLink(snapshot, path);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(path, snapshot, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * persist the rename, on file systems that support syncing a directory
+     */
+    private static void syncDirectory(Path path) {
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported, e.g. on windows
+        }
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+}
@@ -1,44 +1,117 @@
 /*
  * the dictionary server, handling the connections
  */
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import javax.swing.*;
 
 public class DictionaryServer {
     private static final int FIXED_THREAD_NUMBER = 5;
     private static final int MAX_THREAD_NUMBER = 10;
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 50;
+    private static final int DEFAULT_TRACE_LIMIT = 20;
+    // milliseconds a turned away client has to take its answer, including a tls handshake
+    private static final int REJECT_TIMEOUT = 1000;
+    private static final int REJECT_THREADS = 2;
+    // commands that read or write files, handled by the persist stage
+    private static final Set<String> FILE_COMMANDS = new HashSet<>(
+            Arrays.asList("add", "delete", "import", "export", "reload"));
 
-    private ThreadPoolExecutor executor;
+    // the pipeline: decode reads a request, execute or persist produces its response, write sends it
+    private final Stage decodeStage;
+    // reads the later requests of kept alive connections, which mostly wait idle
+    private final Stage keepAliveStage;
+    // kept alive connections waiting for their next request to start, closed on shutdown
+    private final Set<Connection> idleConnections = ConcurrentHashMap.newKeySet();
+    private final Stage executeStage;
+    private final Stage persistStage;
+    private final Stage writeStage;
+    // answers the connections turned away when accepted, so a slow client can't hold up accepting
+    private final Stage rejectStage;
+    private AdmissionController admission;
+    private final LongAdder timedOutRequests = new LongAdder();
+    private final LongAdder expiredRequests = new LongAdder();
+    // serialized responses of words found by search, by dictionary name and word
+    private final ResponseCache responseCache = new ResponseCache(ServerConfig.RESPONSE_CACHE_BYTES);
+    // sampled request traces, and the slow-query log
+    private final TraceRecorder tracer = new TraceRecorder(ServerConfig.TRACE_CAPACITY,
+            ServerConfig.TRACE_SAMPLE_RATE, ServerConfig.SLOW_THRESHOLD, ServerConfig.SLOW_LOG);
     private ServerSocket serverSocket;
-    private String dictionaryFilePath;
+    // dictionaries are replaced as a whole on reload, requests keep the instance they started with
+    private final DictionaryCatalog catalog;
     private ServerListener listener;
 
-    private boolean isStarted;
+    private volatile boolean isStarted;
+    private volatile boolean isShutdown;
 
     public DictionaryServer() {
-        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(FIXED_THREAD_NUMBER);
-        executor.setMaximumPoolSize(MAX_THREAD_NUMBER);
+        // bounded queues, so extra threads are started and then work is rejected fast,
+        // except for writing responses, which the stage handing them over does itself when full
+        decodeStage = new Stage("decode", FIXED_THREAD_NUMBER, MAX_THREAD_NUMBER, ServerConfig.QUEUE_CAPACITY, false);
+        // a thread per waiting connection, started on demand and stopped once unused
+        keepAliveStage = new Stage("keep-alive", 0, ServerConfig.KEEP_ALIVE_CONNECTIONS, 0, false);
+        executeStage = new Stage("execute", ServerConfig.EXECUTE_THREADS, ServerConfig.EXECUTE_THREADS,
+                ServerConfig.STAGE_QUEUE_CAPACITY, false);
+        persistStage = new Stage("persist", ServerConfig.PERSIST_THREADS, ServerConfig.PERSIST_THREADS,
+                ServerConfig.STAGE_QUEUE_CAPACITY, false);
+        writeStage = new Stage("write", ServerConfig.WRITE_THREADS, ServerConfig.WRITE_THREADS,
+                ServerConfig.STAGE_QUEUE_CAPACITY, true);
+        rejectStage = new Stage("reject", REJECT_THREADS, REJECT_THREADS, ServerConfig.QUEUE_CAPACITY, false);
+        admission = new AdmissionController(ServerConfig.MAX_CONNECTIONS,
+                ServerConfig.RATE_LIMIT, ServerConfig.RATE_BURST);
+        catalog = new DictionaryCatalog(ServerConfig.MAX_LOADED_DICTIONARIES, (name, path) -> {
+            responseCache.invalidateByPrefix(cacheKey(name, ""));
+            onDictionaryReloaded(path);
+        }, name -> responseCache.invalidateByPrefix(cacheKey(name, "")));
+        ServerConfig.getDictionaries().forEach(catalog::register);
     }
 
     public void setListener(ServerListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * load the default dictionary, used by requests without a dict field
+     * @param path file path
+     */
     public void setDictionaryFilePath(String path) {
-        this.dictionaryFilePath = path;
+        catalog.register(DictionaryCatalog.DEFAULT_NAME, path);
+        catalog.get(DictionaryCatalog.DEFAULT_NAME);
     }
 
     /**
@@ -47,26 +120,34 @@ public class DictionaryServer {
      *
      * @param port valid port
      */
-    public void startServer(int port) throws IOException {
-        if (!isStarted) {
-            ServerSocketFactory factory = ServerSocketFactory.getDefault();
-            serverSocket = factory.createServerSocket(port);
+    public synchronized void startServer(int port) throws IOException {
+        if (!isStarted && !isShutdown) {
+            ServerSocketFactory factory = ServerConfig.TLS ? tlsServerSocketFactory() : ServerSocketFactory.getDefault();
+            serverSocket = factory.createServerSocket();
+            // rebind right away after a restart, even with connections in TIME_WAIT
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port));
             isStarted = true;
 
             // start a new thread to get server working
             Thread workingThread = new Thread(this::work);
             workingThread.start();
+            if (ServerConfig.WATCH_FILE) {
+                catalog.setWatching(true);
+            }
             onServerStarted();
         }
     }
 
     /**
-     * close server
+     * close server, stop accepting connections,
+     * accepted ones are still handled
      */
-    public void closeServer() {
+    public synchronized void closeServer() {
         if (serverSocket != null && !serverSocket.isClosed() && isStarted) {
             try {
                 serverSocket.close();
+                catalog.setWatching(false);
                 onServerStopped();
             } catch (IOException e) {
                 e.printStackTrace();
@@ -76,16 +157,64 @@ public class DictionaryServer {
     }
 
     /**
-     * shutdown the thread pool
+     * stop accepting connections, let accepted requests finish up to the drain timeout,
+     * then wait for any dictionary write in progress, the server can't be started again
      */
-    public void shutdownThreadPool() {
-        executor.shutdownNow();
+    public void shutdown() {
+        synchronized (this) {
+            if (isShutdown) {
+                return;
+            }
+            isShutdown = true;
+        }
+        closeServer();
+        // an idle read can't be interrupted and would use up the time left for the stages after it
+        for (Connection connection : idleConnections) {
+            if (idleConnections.remove(connection)) {
+                connection.closeIdle();
+            }
+        }
+
+        // in pipeline order, so every stage finishes what the stages before it handed over
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ServerConfig.DRAIN_TIMEOUT);
+        for (Stage stage : new Stage[]{decodeStage, keepAliveStage, executeStage, persistStage, writeStage, rejectStage}) {
+            stage.shutdown(deadline);
+        }
+
+        catalog.close();
+        tracer.close();
+    }
+
+    /**
+     * tls with the key store given by the javax.net.ssl.keyStore properties,
+     * sessions are cached so returning clients resume them with an abbreviated handshake
+     */
+    private ServerSocketFactory tlsServerSocketFactory() throws IOException {
+        try {
+            SSLContext context = SSLContext.getDefault();
+            context.getServerSessionContext().setSessionTimeout(ServerConfig.TLS_SESSION_TIMEOUT);
+            return context.getServerSocketFactory();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
     }
 
     public boolean isStarted() {
         return isStarted;
     }
 
+    /**
+     * load a dictionary file in the calling thread and swap it in,
+     * requests in flight finish against the previous dictionary
+     *
+     * @param name dictionary name
+     * @param path file path
+     * @return false if the name is unknown or the file is invalid, the current dictionary is kept
+     */
+    public boolean reloadDictionary(String name, String path) {
+        return catalog.reload(name, path);
+    }
+
     /**
      * server is working in thread, accepting connections
      */
@@ -93,9 +222,23 @@ public class DictionaryServer {
         while (true) {
             try {
                 Socket socket = serverSocket.accept();
-                executor.execute(() -> {
-                    handleClientSocket(socket);
-                });
+                long acceptedAt = System.nanoTime();
+                AdmissionController.Decision decision = admission.admit(socket.getInetAddress());
+                if (decision == AdmissionController.Decision.RATE_LIMITED) {
+                    turnAway(socket, ConsoleMessage.RATE_LIMITED);
+                    continue;
+                } else if (decision == AdmissionController.Decision.TOO_MANY_CONNECTIONS) {
+                    turnAway(socket, ConsoleMessage.SERVER_BUSY);
+                    continue;
+                }
+
+                Connection connection = new Connection(socket, acceptedAt);
+                try {
+                    decodeStage.execute(() -> readNextRequest(connection));
+                } catch (RejectedExecutionException e) {
+                    admission.rejectQueueFull();
+                    turnAway(socket, ConsoleMessage.SERVER_BUSY);
+                }
             } catch (Exception e) {
                 closeServer();
                 return;
@@ -104,104 +247,547 @@ public class DictionaryServer {
     }
 
     /**
-     * read and write information through stream
-     * @param socket client socket
+     * decode stage: read and parse the next request of a connection, then hand it to
+     * the persist stage if it touches files, or else to the execute stage.
+     * a full stage turns the request away instead of holding up the ones behind it
+     *
+     * @param connection client connection
      */
-    private void handleClientSocket(Socket socket) {
+    private void readNextRequest(Connection connection) {
+        Trace trace = connection.trace;
+        trace.mark(Trace.Phase.DECODING);
+        JSONObject request;
+        // answer of a request over the rate limit
+        Response rejected = null;
         try {
-            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
-            String clientMsg = inputStream.readUTF();
+            connection.open();
+            String clientMsg = readRequest(connection, trace);
+            if (clientMsg == null) {
+                connection.close();
+                return;
+            }
+            if (connection.keptAlive) {
+                // later requests are rate limited one by one, and their timeout counts from now.
+                // one over the limit is answered in turn without being handled, the connection stays
+                // open, so a client with requests in flight only has to retry the turned away ones
+                if (!admission.admitRequest(connection.socket.getInetAddress())) {
+                    rejected = rejection(ConsoleMessage.RATE_LIMITED);
+                }
+                connection.acceptedAt = System.nanoTime();
+                trace.startAtRequest();
+            }
+            trace.mark(Trace.Phase.READ);
+            request = parseRequest(clientMsg);
+            trace.mark(Trace.Phase.PARSED);
+        } catch (SocketTimeoutException e) {
+            timedOutRequests.increment();
+            connection.close();
+            return;
+        } catch (Exception e) {
+            e.printStackTrace();
+            connection.close();
+            return;
+        }
 
-            String responseMsg = getResponseMessage(clientMsg);
-            DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
-            outputStream.writeUTF(responseMsg);
-            outputStream.flush();
+        if (request != null) {
+            trace.setRequest(connection.socket.getInetAddress().getHostAddress(), request.optString("command"),
+                    request.optString("dict", DictionaryCatalog.DEFAULT_NAME).trim(), request.optString("word").trim());
+        }
+        long acceptedAt = connection.acceptedAt;
+        Stage stage = isTouchingFiles(request) ? persistStage : executeStage;
+        CompletableFuture<Response> response;
+        if (rejected != null) {
+            response = CompletableFuture.completedFuture(rejected);
+        } else {
+            try {
+                response = CompletableFuture.supplyAsync(() -> {
+                    trace.setStage(stage.getName());
+                    trace.mark(Trace.Phase.EXECUTING);
+                    try {
+                        return getResponse(request, acceptedAt, trace);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, stage);
+            } catch (RejectedExecutionException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+        }
+        response.whenCompleteAsync((result, error) -> writeResponse(connection, request, result, error), writeStage);
+    }
 
-            JSONObject responseJson = new JSONObject(responseMsg);
-            String command = responseJson.optString("command");
-            String message = responseJson.optString("message");
-            boolean result = responseJson.optBoolean("result");
-            onServerRequest(socket, command, message);
+    /**
+     * write stage: send the response, then wait for the next request
+     * if the client asked to keep the connection alive, or else close it
+     */
+    private void writeResponse(Connection connection, JSONObject request, Response response, Throwable error) {
+        Trace trace = connection.trace;
+        trace.mark(Trace.Phase.WRITING);
+        try {
+            writeResponse(connection, request, response, error, trace);
+        } finally {
+            tracer.record(trace);
+        }
+    }
 
+    private void writeResponse(Connection connection, JSONObject request, Response response, Throwable error,
+                               Trace trace) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof RejectedExecutionException) {
+                rejectClientSocket(connection.socket, ConsoleMessage.SERVER_BUSY);
+            } else {
+                cause.printStackTrace();
+            }
+            connection.close();
+            return;
+        }
+        if (response == null) {
+            // the client has given up on this request, don't answer it
+            expiredRequests.increment();
+            trace.setExpired();
+            connection.close();
+            return;
+        }
 
-            closeSocket(socket);
-        } catch (Exception e) {
+        try {
+            connection.outputStream.write(response.getFrame());
+            connection.outputStream.flush();
+            trace.mark(Trace.Phase.WRITTEN);
+        } catch (IOException e) {
             e.printStackTrace();
+            connection.close();
+            return;
         }
+        onServerRequest(connection.socket, response.getCommand(), response.getMessage());
+
+        if (request != null && request.optBoolean("keepAlive") && !isShutdown) {
+            connection.keptAlive = true;
+            connection.trace = new Trace(System.nanoTime());
+            idleConnections.add(connection);
+            try {
+                // not on the decode stage, idle connections would hold up new ones
+                keepAliveStage.execute(() -> readNextRequest(connection));
+                return;
+            } catch (RejectedExecutionException e) {
+                // as many connections are kept alive as allowed, the client has to connect again
+                idleConnections.remove(connection);
+            }
+        }
+        connection.close();
     }
 
     /**
-     * parse client message and produce the response message
+     * whether a request reads or writes files, including loading a dictionary not in memory yet
+     */
+    private boolean isTouchingFiles(JSONObject request) {
+        if (request == null) {
+            return false;
+        }
+        return FILE_COMMANDS.contains(request.optString("command"))
+                || !catalog.isLoaded(request.optString("dict", DictionaryCatalog.DEFAULT_NAME).trim());
+    }
+
+    /**
+     * wait up to the idle timeout, or the keep alive timeout after the first request,
+     * for a request to start, then up to the read timeout for the rest of it
      *
+     * @param connection client connection, a kept alive one is idle until its request starts
+     * @param trace trace of the request, marked when it starts
+     * @return request message, null if a kept alive connection was closed, stayed idle
+     *         or was closed by shutdown
+     */
+    private String readRequest(Connection connection, Trace trace) throws IOException {
+        Socket socket = connection.socket;
+        BufferedInputStream inputStream = connection.inputStream;
+        boolean keptAlive = connection.keptAlive;
+        // added before the shutdown flag was seen, or else shutdown closes it
+        if (keptAlive && isShutdown && idleConnections.remove(connection)) {
+            return null;
+        }
+        socket.setSoTimeout(keptAlive ? ServerConfig.KEEP_ALIVE_TIMEOUT : ServerConfig.IDLE_TIMEOUT);
+        inputStream.mark(1);
+        try {
+            if (inputStream.read() < 0) {
+                if (keptAlive) {
+                    idleConnections.remove(connection);
+                    return null;
+                }
+                throw new IOException("connection closed before a request was sent");
+            }
+        } catch (IOException e) {
+            // a timeout, or the socket closed by shutdown
+            if (keptAlive && (e instanceof SocketTimeoutException || socket.isClosed())) {
+                idleConnections.remove(connection);
+                return null;
+            }
+            throw e;
+        }
+        // shutdown took the connection first and closes it
+        if (keptAlive && !idleConnections.remove(connection)) {
+            return null;
+        }
+        inputStream.reset();
+        trace.mark(Trace.Phase.REQUEST_STARTED);
+
+        socket.setSoTimeout(ServerConfig.READ_TIMEOUT);
+        return new DataInputStream(inputStream).readUTF();
+    }
+
+    /**
      * @param clientMsg client message
-     * @return response message
+     * @return request json, null if the message is not json
+     */
+    private JSONObject parseRequest(String clientMsg) {
+        try {
+            return new JSONObject(clientMsg);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * answer a connection turned away by the accepting thread on the reject stage,
+     * with tls the answer waits for a handshake. if the stage is full it is closed without an answer
+     * @param socket client socket
+     * @param message reason
+     */
+    private void turnAway(Socket socket, String message) {
+        try {
+            rejectStage.execute(() -> rejectClientSocket(socket, message));
+        } catch (RejectedExecutionException e) {
+            closeSocket(socket);
+        }
+    }
+
+    /**
+     * answer a connection that won't be handled, without reading its request
+     * @param socket client socket
+     * @param message reason
+     */
+    private void rejectClientSocket(Socket socket, String message) {
+        try {
+            // a client that doesn't take the answer, e.g. never finishes the handshake, is dropped
+            socket.setSoTimeout(REJECT_TIMEOUT);
+            DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+            outputStream.write(rejection(message).getFrame());
+            outputStream.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeSocket(socket);
+        }
+    }
+
+    /**
+     * @param message reason
+     * @return the answer to a request that won't be handled
      */
-    private String getResponseMessage(String clientMsg) {
+    private static Response rejection(String message) throws IOException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("result", false);
+        map.put("message", message);
+        map.put("command", "unknown");
+        return Response.of(map);
+    }
+
+    /**
+     * produce the response of a request
+     *
+     * @param json request, null if the client message is not json
+     * @param acceptedAt System.nanoTime() when the request was accepted
+     * @param trace trace of the request
+     * @return response, null if the request's timeout has passed
+     */
+    private Response getResponse(JSONObject json, long acceptedAt, Trace trace) throws IOException {
         Map<String, Object> map = new HashMap<>();
         map.put("result", false);
         map.put("message", ConsoleMessage.INVALID_REQUEST);
         map.put("command", "unknown");
 
-        List<String> words = parseUtil.getDictionaryWords(dictionaryFilePath);
+        if (json == null) {
+            return encode(map, trace);
+        }
         try {
-            JSONObject json = new JSONObject(clientMsg);
             String command = json.optString("command");
+
+            // optional time budget of the client in milliseconds, counted from accepting
+            // the connection, so the deadline doesn't depend on the two clocks agreeing
+            long timeout = json.optLong("timeout", 0);
+            if (timeout > 0 && System.nanoTime() - acceptedAt > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+                return null;
+            }
             map.put("command", command);
+
+            // requests without a dict field go to the default dictionary
+            String name = json.optString("dict", DictionaryCatalog.DEFAULT_NAME).trim();
+            Dictionary dictionary = catalog.get(name);
+            if (dictionary == null) {
+                map.put("message", ConsoleMessage.DICTIONARY_UNAVAILABLE + name);
+                return encode(map, trace);
+            }
+
             if (command.equals("add")) {
                 String word = json.optString("word").trim().toLowerCase();
                 String des = json.optString("des").trim();
-                if (words.contains(word)) {
+                Dictionary.Version version = null;
+                if (dictionary.current().contains(word)) {
                     map.put("message", ConsoleMessage.WORD_EXISTS);
                     map.put("result", false);
-                } else if (parseUtil.addDictionaryWord(dictionaryFilePath, word, des)) {
+                } else if (!parseUtil.isXmlText(word) || !parseUtil.isXmlText(des)) {
+                    map.put("message", ConsoleMessage.ADD_WORD_INVALID);
+                    map.put("result", false);
+                } else if ((version = dictionary.add(word, des)) != null) {
+                    responseCache.invalidate(cacheKey(name, word));
                     map.put("message", ConsoleMessage.ADD_WORD_SUCCEEDED);
                     map.put("result", true);
+                    map.put("version", version.getNumber());
                 } else {
                     map.put("message", ConsoleMessage.ADD_WORD_FAILED);
                     map.put("result", false);
                 }
             } else if (command.equals("delete")) {
                 String word = json.optString("word").trim().toLowerCase();
-                if (!words.contains(word)) {
+                Dictionary.Version version = null;
+                if (!dictionary.current().contains(word)) {
                     map.put("message", ConsoleMessage.WORD_NOT_EXISTS);
                     map.put("result", false);
-                } else if (parseUtil.deleteDictionaryWord(dictionaryFilePath, word)) {
+                } else if ((version = dictionary.delete(word)) != null) {
+                    responseCache.invalidate(cacheKey(name, word));
                     map.put("message", ConsoleMessage.DELETE_WORD_SUCCEEDED);
                     map.put("result", true);
+                    map.put("version", version.getNumber());
                 } else {
                     map.put("message", ConsoleMessage.DELETE_WORD_FAILED);
                     map.put("result", false);
                 }
             } else if (command.equals("search")) {
                 String word = json.optString("word").trim().toLowerCase();
-                if (!words.contains(word)) {
+                String key = cacheKey(name, word);
+                Response cached = responseCache.get(key);
+                if (cached != null) {
+                    // the word hasn't changed since it was read
+                    trace.mark(Trace.Phase.EXECUTED);
+                    trace.mark(Trace.Phase.ENCODED);
+                    return cached;
+                }
+                Dictionary.Version version = dictionary.current();
+                String des = version.search(word);
+                if (des.isEmpty()) {
+                    map.put("version", version.getNumber());
+                    map.put("result", false);
                     map.put("message", ConsoleMessage.SEARCH_NOT_EXISTS);
+                } else {
+                    // no version, the frame is cached and served after later versions are published
+                    map.put("result", true);
+                    map.put("des", des);
+                    map.put("message", word + " : " + des);
+                    Response response = encode(map, trace);
+                    responseCache.put(key, response);
+                    // a change published since the read may have invalidated the word before the put
+                    if (catalog.peek(name) != dictionary || dictionary.current() != version) {
+                        responseCache.invalidate(key, response);
+                    }
+                    return response;
+                }
+            } else if (command.equals("list")) {
+                // pages of one listing pin the version returned with the first page
+                Dictionary.Version version = json.has("version")
+                        ? dictionary.version(json.optLong("version")) : dictionary.current();
+                try {
+                    if (version == null) {
+                        map.put("result", false);
+                        map.put("message", ConsoleMessage.LIST_VERSION_EXPIRED);
+                    } else {
+                        List<String> words = version.list(WordQuery.of(json));
+                        int total = words.size();
+                        String pageStr = "";
+                        if (json.has("size")) {
+                            int page = Math.max(0, json.optInt("page", 0));
+                            int size = Math.max(1, json.optInt("size"));
+                            int from = (int) Math.min(total, (long) page * size);
+                            words = words.subList(from, (int) Math.min(total, (long) from + size));
+                            pageStr = ", page " + (page + 1) + "/" + Math.max(1, (total + size - 1) / size);
+                            map.put("page", page);
+                        }
+                        StringBuilder wordsStr = new StringBuilder();
+                        for (String word : words) {
+                            wordsStr.append(word).append(' ');
+                        }
+                        map.put("result", true);
+                        map.put("version", version.getNumber());
+                        map.put("total", total);
+                        map.put("message", total + " word(s)" + pageStr + ": " + wordsStr);
+                    }
+                } catch (IllegalArgumentException e) {
+                    map.put("result", false);
+                    map.put("message", ConsoleMessage.LIST_FAILED + e.getMessage());
+                }
+            } else if (command.equals("define-search")) {
+                // the query may come in its own field or in the description field
+                String query = json.optString("query", json.optString("des")).trim();
+                int page = Math.max(0, json.optInt("page", 0));
+                int size = Math.min(MAX_PAGE_SIZE, Math.max(1, json.optInt("size", DEFAULT_PAGE_SIZE)));
+                if (query.isEmpty()) {
+                    map.put("message", ConsoleMessage.DEFINE_SEARCH_EMPTY);
                     map.put("result", false);
                 } else {
-                    String des = parseUtil.searchDictionaryWord(dictionaryFilePath, word);
-                    if (des.isEmpty()) {
+                    DescriptionIndex.Result searchResult = dictionary.defineSearch(query, page, size);
+                    if (searchResult.getTotal() == 0) {
+                        map.put("message", ConsoleMessage.DEFINE_SEARCH_NOT_FOUND);
                         map.put("result", false);
-                        map.put("message", ConsoleMessage.SEARCH_NOT_EXISTS);
                     } else {
+                        int pageCount = (searchResult.getTotal() + size - 1) / size;
                         map.put("result", true);
-                        map.put("des", des);
-                        map.put("message", word + " : " + des);
+                        map.put("total", searchResult.getTotal());
+                        map.put("page", page);
+                        map.put("words", searchResult.getWords());
+                        map.put("message", searchResult.getTotal() + " word(s) match, page "
+                                + (page + 1) + "/" + pageCount + ": " + String.join(" ", searchResult.getWords()));
                     }
                 }
-            } else if (command.equals("list")) {
-                int count = words.size();
-                String wordsStr = "";
-                for (String word : words) {
-                    wordsStr = wordsStr + word + " ";
+            } else if (command.equals("import") || command.equals("export")) {
+                // data files are relative to the data directory, the format defaults to the file extension
+                String file = json.optString("file").trim();
+                Path path = ServerConfig.DATA_DIR.isEmpty() || file.isEmpty() ? null : dataFile(file);
+                if (ServerConfig.DATA_DIR.isEmpty()) {
+                    map.put("message", ConsoleMessage.TRANSFER_DISABLED);
+                    map.put("result", false);
+                } else if (file.isEmpty()) {
+                    map.put("message", ConsoleMessage.TRANSFER_FILE_EMPTY);
+                    map.put("result", false);
+                } else if (path == null) {
+                    map.put("message", ConsoleMessage.TRANSFER_FILE_INVALID);
+                    map.put("result", false);
+                } else if (command.equals("import")) {
+                    try {
+                        DictionaryTransfer.Batch batch = DictionaryTransfer.read(path,
+                                DictionaryTransfer.Format.of(json.optString("format"), file));
+                        int imported = dictionary.importEntries(batch.getEntries());
+                        map.put("result", true);
+                        map.put("imported", imported);
+                        map.put("message", imported + " word(s) imported, "
+                                + (batch.getEntries().size() - imported + batch.getDuplicates()) + " duplicate(s), "
+                                + batch.getInvalid() + " invalid record(s).");
+                    } catch (IOException | IllegalArgumentException e) {
+                        map.put("message", ConsoleMessage.IMPORT_FAILED + e.getMessage());
+                        map.put("result", false);
+                    }
+                } else {
+                    try {
+                        DictionaryTransfer.Format format = DictionaryTransfer.Format.of(json.optString("format"), file);
+                        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                            dictionary.export(out, format);
+                        }
+                        map.put("result", true);
+                        map.put("message", dictionary.current().size() + " word(s) exported to " + file);
+                    } catch (IOException | IllegalArgumentException e) {
+                        map.put("message", ConsoleMessage.EXPORT_FAILED + e.getMessage());
+                        map.put("result", false);
+                    }
+                }
+            } else if (command.equals("metrics")) {
+                Map<String, Object> metrics = admission.getMetrics();
+                metrics.put("timedOutRequests", timedOutRequests.sum());
+                metrics.put("expiredRequests", expiredRequests.sum());
+                metrics.putAll(responseCache.getMetrics());
+                metrics.putAll(catalog.getMetrics());
+                metrics.putAll(tracer.getMetrics());
+                Map<String, Object> stages = new LinkedHashMap<>();
+                for (Stage stage : new Stage[]{decodeStage, keepAliveStage, executeStage, persistStage, writeStage, rejectStage}) {
+                    stages.put(stage.getName(), stage.getMetrics());
+                }
+                metrics.put("stages", stages);
+                map.put("result", true);
+                map.put("metrics", metrics);
+                map.put("message", "metrics: " + new JSONObject(metrics));
+            } else if (command.equals("stats")) {
+                Map<String, Object> stats = dictionary.getStats();
+                map.put("result", true);
+                map.put("stats", stats);
+                map.put("message", stats.get("words") + " word(s), " + stats.get("bytes") + " byte(s), "
+                        + "word lengths " + new JSONObject((Map<?, ?>) stats.get("wordLengths"))
+                        + ", first letters " + new JSONObject((Map<?, ?>) stats.get("firstLetters")));
+            } else if (command.equals("traces")) {
+                // the most recent sampled requests first, optionally only the slow ones
+                int limit = Math.min(tracer.getCapacity(), Math.max(1, json.optInt("limit", DEFAULT_TRACE_LIMIT)));
+                List<Map<String, Object>> traces = tracer.recent(limit, json.optBoolean("slow"));
+                map.put("result", true);
+                map.put("traces", traces);
+                map.put("message", traces.size() + " trace(s): " + new JSONArray(traces));
+            } else if (command.equals("dictionaries")) {
+                List<String> names = catalog.getNames();
+                StringBuilder namesStr = new StringBuilder();
+                for (String dictionaryName : names) {
+                    namesStr.append(dictionaryName).append(catalog.isLoaded(dictionaryName) ? " (loaded) " : " ");
                 }
                 map.put("result", true);
-                map.put("message", count + " word(s): " + wordsStr);
+                map.put("dictionaries", names);
+                map.put("message", names.size() + " dictionary(ies): " + namesStr);
+            } else if (command.equals("reload")) {
+                // always the registered file, clients can't point the server at another one
+                String path = dictionary.getFilePath();
+                if (reloadDictionary(name, path)) {
+                    map.put("message", ConsoleMessage.RELOAD_SUCCEEDED + path);
+                    map.put("result", true);
+                } else {
+                    map.put("message", ConsoleMessage.RELOAD_FAILED);
+                    map.put("result", false);
+                }
             }
         } catch (JSONException e) {
             e.printStackTrace();
         }
 
-        return new JSONObject(map).toString();
+        return encode(map, trace);
+    }
+
+    /**
+     * resolve the data file of an import or export, clients may only name files in the data directory
+     * @param file path relative to the data directory
+     * @return the file, null if it is absolute, goes up with .., or leaves the directory through a link
+     */
+    private static Path dataFile(String file) {
+        try {
+            Path relative = Paths.get(file);
+            if (relative.isAbsolute() || relative.getRoot() != null) {
+                return null;
+            }
+            for (Path part : relative) {
+                if (part.toString().equals("..")) {
+                    return null;
+                }
+            }
+            Path directory = Paths.get(ServerConfig.DATA_DIR).toRealPath();
+            Path path = directory.resolve(relative).normalize();
+            if (!path.startsWith(directory) || Files.isSymbolicLink(path)
+                    || !path.getParent().toRealPath().startsWith(directory)) {
+                return null;
+            }
+            return path;
+        } catch (InvalidPathException | IOException e) {
+            // no such directory
+            return null;
+        }
+    }
+
+    /**
+     * serialize a response, the end of executing the request
+     */
+    private static Response encode(Map<String, Object> map, Trace trace) throws IOException {
+        trace.mark(Trace.Phase.EXECUTED);
+        Response response = Response.of(map);
+        trace.mark(Trace.Phase.ENCODED);
+        return response;
+    }
+
+    /**
+     * @return response cache key of a word in a dictionary
+     */
+    private static String cacheKey(String name, String word) {
+        return name + '\u0000' + word;
     }
 
     /**
@@ -211,14 +797,78 @@ public class DictionaryServer {
      */
     private void closeSocket(Socket socket) {
         try {
-            socket.shutdownInput();
-            socket.shutdownOutput();
+            // a tls socket is closed with a close_notify instead
+            if (!(socket instanceof SSLSocket)) {
+                socket.shutdownInput();
+                socket.shutdownOutput();
+            }
             socket.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * a client connection passing through the stages, one request at a time,
+     * so only one thread uses it at once
+     */
+    private class Connection {
+        private final Socket socket;
+        private BufferedInputStream inputStream;
+        private DataOutputStream outputStream;
+        // System.nanoTime() when the current request was accepted
+        private long acceptedAt;
+        // whether a request was already answered
+        private boolean keptAlive;
+        // trace of the current request
+        private Trace trace;
+        private boolean isClosed;
+
+        Connection(Socket socket, long acceptedAt) {
+            this.socket = socket;
+            this.acceptedAt = acceptedAt;
+            this.trace = new Trace(acceptedAt);
+        }
+
+        /**
+         * set up the streams before the first request, kept across requests
+         */
+        void open() throws IOException {
+            if (inputStream == null) {
+                socket.setTcpNoDelay(true);
+                inputStream = new BufferedInputStream(socket.getInputStream());
+                outputStream = new DataOutputStream(socket.getOutputStream());
+            }
+        }
+
+        /**
+         * close the socket only, which ends the read of the thread waiting on it,
+         * that thread closes the rest
+         */
+        void closeIdle() {
+            try {
+                // no half close, the reading thread may close the socket at the same time
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * close the socket if it is still open, and leave room for another connection
+         */
+        void close() {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            if (!socket.isClosed()) {
+                closeSocket(socket);
+            }
+            admission.release();
+        }
+    }
+
     private void onServerStarted() {
         SwingUtilities.invokeLater(listener::onServerStarted);
     }
@@ -227,6 +877,12 @@ public class DictionaryServer {
         SwingUtilities.invokeLater(listener::onServerStopped);
     }
 
+    private void onDictionaryReloaded(String path) {
+        SwingUtilities.invokeLater(() -> {
+            listener.onDictionaryReloaded(path);
+        });
+    }
+
     private void onServerRequest(Socket socket, String command, String message) {
         SwingUtilities.invokeLater(() -> {
             listener.onServerRequest(socket, command, message);
@@ -0,0 +1,82 @@
+/*
+ * counters of the words in a dictionary
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * word count, bytes, and histograms of word lengths and first letters,
+ * kept up to date on every add and delete, so reading them never walks the words
+ */
+public class DictionaryStats {
+    // words this long or longer share the last length bucket
+    private static final int MAX_LENGTH = 32;
+    private static final int LETTERS = 26;
+
+    private final LongAdder words = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder[] lengths = newCounters(MAX_LENGTH + 1);
+    // a to z, then everything else
+    private final LongAdder[] letters = newCounters(LETTERS + 1);
+
+    /**
+     * count a word that was added
+     */
+    public void add(String word, String des) {
+        update(word, des, 1);
+    }
+
+    /**
+     * uncount a word that was deleted
+     */
+    public void remove(String word, String des) {
+        update(word, des, -1);
+    }
+
+    /**
+     * @return word count, UTF-8 bytes of the words and descriptions, and the histograms without empty buckets
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> lengthCounts = new LinkedHashMap<>();
+        for (int i = 1; i <= MAX_LENGTH; i++) {
+            long count = lengths[i].sum();
+            if (count > 0) {
+                lengthCounts.put(i == MAX_LENGTH ? MAX_LENGTH + "+" : String.valueOf(i), count);
+            }
+        }
+        Map<String, Object> letterCounts = new LinkedHashMap<>();
+        for (int i = 0; i <= LETTERS; i++) {
+            long count = letters[i].sum();
+            if (count > 0) {
+                letterCounts.put(i == LETTERS ? "other" : String.valueOf((char) ('a' + i)), count);
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("words", words.sum());
+        stats.put("bytes", bytes.sum());
+        stats.put("wordLengths", lengthCounts);
+        stats.put("firstLetters", letterCounts);
+        return stats;
+    }
+
+    private void update(String word, String des, int delta) {
+        words.add(delta);
+        bytes.add(delta * (long) (word.getBytes(StandardCharsets.UTF_8).length
+                + des.getBytes(StandardCharsets.UTF_8).length));
+        lengths[Math.max(0, Math.min(MAX_LENGTH, word.length()))].add(delta);
+        char first = word.isEmpty() ? 0 : word.charAt(0);
+        letters[first >= 'a' && first <= 'z' ? first - 'a' : LETTERS].add(delta);
+    }
+
+    private static LongAdder[] newCounters(int size) {
+        LongAdder[] counters = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * bulk import and export of dictionary entries
+ */
+
+import org.json.JSONObject;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * streams entries between dictionary files and xml, csv or jsonl data files
+ *
+ * usage: java -cp DictionaryServer.jar DictionaryTransfer import|export <dictionary-file> <data-file> [xml|csv|jsonl]
+ */
+public class DictionaryTransfer {
+    private static final String INDENT = "    ";
+
+    public enum Format {
+        XML, CSV, JSONL;
+
+        /**
+         * @param name format name, may be empty
+         * @param file data file, its extension is used when no name is given
+         * @return format
+         */
+        public static Format of(String name, String file) {
+            if (name == null || name.isEmpty()) {
+                int dot = file.lastIndexOf('.');
+                name = dot < 0 ? "" : file.substring(dot + 1);
+            }
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown data format: " + name);
+            }
+        }
+    }
+
+    /**
+     * validated entries of a data file, in file order
+     */
+    public static class Batch {
+        private final Map<String, String> entries;
+        private final long invalid;
+        private final long duplicates;
+
+        Batch(Map<String, String> entries, long invalid, long duplicates) {
+            this.entries = entries;
+            this.invalid = invalid;
+            this.duplicates = duplicates;
+        }
+
+        public Map<String, String> getEntries() {
+            return entries;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: java -cp DictionaryServer.jar DictionaryTransfer "
+                    + "import|export <dictionary-file> <data-file> [xml|csv|jsonl]");
+            System.exit(1);
+        }
+        Format format = Format.of(args.length > 3 ? args[3] : "", args[2]);
+        Dictionary dictionary = Dictionary.load(args[1]);
+        if (dictionary == null) {
+            System.err.println(args[1] + ": not a valid dictionary file");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        if (args[0].equals("import")) {
+            Batch batch = read(Paths.get(args[2]), format);
+            int imported = dictionary.importEntries(batch.getEntries());
+            System.out.println(imported + " word(s) imported, "
+                    + (batch.getEntries().size() - imported + batch.getDuplicates()) + " duplicate(s), "
+                    + batch.getInvalid() + " invalid record(s)");
+        } else {
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                dictionary.export(out, format);
+            }
+            System.out.println(dictionary.current().size() + " word(s) exported");
+        }
+        System.out.println("took " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * read, validate and deduplicate the entries of a data file,
+     * the first record of a word wins
+     *
+     * @param file data file
+     * @param format data format
+     * @return batch
+     */
+    public static Batch read(Path file, Format format) throws IOException {
+        LongAdder valid = new LongAdder();
+        LongAdder invalid = new LongAdder();
+        Map<String, String> entries;
+
+        try (Stream<String[]> records = records(file, format)) {
+            // ordered parallel stream: records are validated concurrently, merged in file order
+            entries = records.parallel()
+                    .map(DictionaryTransfer::normalize)
+                    .filter(record -> {
+                        if (record == null) {
+                            invalid.increment();
+                            return false;
+                        }
+                        valid.increment();
+                        return true;
+                    })
+                    .collect(Collectors.toMap(record -> record[0], record -> record[1],
+                            (first, second) -> first, LinkedHashMap::new));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new Batch(entries, invalid.sum(), valid.sum() - entries.size());
+    }
+
+    /**
+     * stream the entries of a dictionary xml file one by one
+     * @param file dictionary file
+     * @param consumer receives word and description
+     */
+    public static void readXml(Path file, BiConsumer<String, String> consumer) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String word = null;
+            String des = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("node")) {
+                        word = null;
+                        des = null;
+                    } else if (name.equals("word")) {
+                        word = reader.getElementText();
+                    } else if (name.equals("des")) {
+                        des = reader.getElementText();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("node")) {
+                    if (word != null && !word.trim().isEmpty()) {
+                        consumer.accept(word, des == null ? "" : des);
+                    }
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * write entries as a dictionary xml file
+     * @param out writer
+     * @param entries calls its argument with every word and description
+     */
+    public static void writeXml(Writer out, Consumer<BiConsumer<String, String>> entries) throws IOException {
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("dictionary");
+            entries.accept((word, des) -> {
+                try {
+                    writer.writeCharacters("\n" + INDENT);
+                    writer.writeStartElement("node");
+                    writer.writeCharacters("\n" + INDENT + INDENT);
+                    writer.writeStartElement("word");
+                    writer.writeCharacters(word);
+                    writer.writeEndElement();
+                    writer.writeCharacters("\n" + INDENT + INDENT);
+                    writer.writeStartElement("des");
+                    writer.writeCharacters(des);
+                    writer.writeEndElement();
+                    writer.writeCharacters("\n" + INDENT);
+                    writer.writeEndElement();
+                } catch (XMLStreamException e) {
+                    throw new UncheckedIOException(new IOException(e));
+                }
+            });
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * write entries in a data format
+     * @param out writer
+     * @param format data format
+     * @param entries calls its argument with every word and description
+     */
+    public static void write(Writer out, Format format, Consumer<BiConsumer<String, String>> entries)
+            throws IOException {
+        if (format == Format.XML) {
+            writeXml(out, entries);
+            return;
+        }
+        BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out);
+        try {
+            entries.accept((word, des) -> {
+                try {
+                    if (format == Format.CSV) {
+                        writer.write(csvField(word));
+                        writer.write(',');
+                        writer.write(csvField(des));
+                    } else {
+                        Map<String, String> map = new LinkedHashMap<>();
+                        map.put("word", word);
+                        map.put("des", des);
+                        writer.write(new JSONObject(map).toString());
+                    }
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * raw word and description of every record, lazily read for line based formats
+     */
+    private static Stream<String[]> records(Path file, Format format) throws IOException {
+        if (format == Format.XML) {
+            List<String[]> records = new ArrayList<>();
+            readXml(file, (word, des) -> records.add(new String[]{word, des}));
+            return records.stream();
+        }
+        Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8);
+        return lines.filter(line -> !line.trim().isEmpty())
+                .map(format == Format.CSV ? DictionaryTransfer::parseCsv : DictionaryTransfer::parseJson);
+    }
+
+    /**
+     * apply the same rules as adding a single word
+     * @return word and description, null if the record is invalid
+     */
+    private static String[] normalize(String[] record) {
+        if (record == null || record[0] == null || record[1] == null) {
+            return null;
+        }
+        String word = record[0].trim().toLowerCase();
+        String des = record[1].trim();
+        if (word.isEmpty() || des.isEmpty() || !parseUtil.isXmlText(word) || !parseUtil.isXmlText(des)) {
+            return null;
+        }
+        return new String[]{word, des};
+    }
+
+    private static String[] parseJson(String line) {
+        try {
+            JSONObject json = new JSONObject(line);
+            return new String[]{json.optString("word", null), json.optString("des", null)};
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * parse a "word,description" line, fields may be quoted with "" as an escaped quote
+     */
+    private static String[] parseCsv(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if (quoted || fields.size() != 2) {
+            return null;
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * watch the dictionary file for changes made outside the server
+ */
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * calls back once a burst of modifications to the file has settled
+ */
+public class DictionaryWatcher {
+    private static final long SETTLE_MILLIS = 500;
+
+    private final Path file;
+    private final Runnable onChange;
+    private WatchService watchService;
+
+    public DictionaryWatcher(Path file, Runnable onChange) {
+        this.file = file.toAbsolutePath();
+        this.onChange = onChange;
+    }
+
+    /**
+     * start watching in a daemon thread
+     */
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(this::watch, "dictionary-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * stop watching
+     */
+    public void close() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = pollFileEvents(key);
+
+                // editors write in several steps, wait until they are done
+                while (changed) {
+                    key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        onChange.run();
+                        break;
+                    }
+                    pollFileEvents(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // watcher closed
+        }
+    }
+
+    /**
+     * @return whether any event of the key concerns the watched file
+     */
+    private boolean pollFileEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path && file.getFileName().equals(context)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * measure how adds and deletes scale with the number of writers
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * runs 1, 2, 4 ... up to max threads, each adding and then deleting its own words in a copy of
+ * a dictionary file, while one more thread keeps searching, and prints the mutations per second
+ * and the search latency for each thread count.
+ *
+ * usage: java -cp DictionaryServer.jar MutationBenchmark <dictionary-file> [max-threads] [words-per-thread]
+ */
+public class MutationBenchmark {
+    // search latencies kept, the latest ones
+    private static final int SEARCH_SAMPLES = 1 << 20;
+    // between searches, so the searcher doesn't take a core from the writers
+    private static final long SEARCH_PAUSE_NANOS = 50000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java -cp DictionaryServer.jar MutationBenchmark "
+                    + "<dictionary-file> [max-threads] [words-per-thread]");
+            System.exit(1);
+        }
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int words = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.printf("%-8s %12s %10s %14s %14s%n", "threads", "mutations/s", "speedup", "search p50 ns", "search p99 ns");
+        double single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Path copy = Files.createTempFile("dictionary", ".xml");
+            try {
+                Files.copy(Paths.get(args[0]), copy, StandardCopyOption.REPLACE_EXISTING);
+                Dictionary dictionary = Dictionary.load(copy.toString());
+                if (dictionary == null) {
+                    System.err.println(args[0] + ": not a valid dictionary file");
+                    System.exit(1);
+                }
+                double rate = run(dictionary, threads, words);
+                if (threads == 1) {
+                    single = rate;
+                }
+                System.out.printf("%-8d %12.0f %9.2fx", threads, rate, rate / single);
+                System.out.printf(" %14d %14d%n", searchLatencies[searchLatencies.length / 2],
+                        searchLatencies[Math.min(searchLatencies.length - 1, (int) (searchLatencies.length * 0.99))]);
+            } finally {
+                Files.deleteIfExists(copy);
+                Files.deleteIfExists(Paths.get(copy + ".bak"));
+            }
+        }
+    }
+
+    // sorted search latencies of the last run
+    private static long[] searchLatencies;
+
+    /**
+     * @return mutations per second
+     */
+    private static double run(Dictionary dictionary, int threads, int words) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder failed = new LongAdder();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String prefix = "bench" + t + "x";
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < words; i++) {
+                    if (dictionary.add(prefix + i, "benchmark word " + i) == null) {
+                        failed.increment();
+                    }
+                }
+                for (int i = 0; i < words; i++) {
+                    if (dictionary.delete(prefix + i) == null) {
+                        failed.increment();
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        // searches of a word being written, they shouldn't wait for the writers
+        AtomicBoolean isRunning = new AtomicBoolean(true);
+        long[] latencies = new long[SEARCH_SAMPLES];
+        int[] searches = new int[1];
+        Thread searcher = new Thread(() -> {
+            while (isRunning.get()) {
+                long begin = System.nanoTime();
+                dictionary.current().search("bench0x0");
+                latencies[searches[0]++ & (SEARCH_SAMPLES - 1)] = System.nanoTime() - begin;
+                LockSupport.parkNanos(SEARCH_PAUSE_NANOS);
+            }
+        });
+        searcher.start();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        isRunning.set(false);
+        searcher.join();
+        dictionary.close();
+
+        searchLatencies = Arrays.copyOf(latencies, Math.max(1, Math.min(searches[0], SEARCH_SAMPLES)));
+        Arrays.sort(searchLatencies);
+        if (failed.sum() > 0) {
+            System.out.println(failed.sum() + " mutation(s) failed");
+        }
+        return 2.0 * threads * words * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * a response ready to be written to a client
+ */
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * the serialized response bytes, together with what the server window shows of it
+ */
+public class Response {
+    private final String command;
+    private final String message;
+    // exactly what DataOutputStream.writeUTF would write
+    private final byte[] frame;
+
+    private Response(String command, String message, byte[] frame) {
+        this.command = command;
+        this.message = message;
+        this.frame = frame;
+    }
+
+    /**
+     * serialize a response map once
+     * @param map response fields, with command and message
+     * @return response
+     */
+    public static Response of(Map<String, Object> map) throws IOException {
+        String json = new JSONObject(map).toString();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length() + 16);
+        new DataOutputStream(bytes).writeUTF(json);
+        return new Response(String.valueOf(map.get("command")), String.valueOf(map.get("message")),
+                bytes.toByteArray());
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * rough number of bytes the response takes in memory
+     */
+    public int weight() {
+        return frame.length + 2 * (command.length() + message.length()) + 64;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * cache of serialized search responses
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * least recently used responses by key, bounded by their size in bytes.
+ * split into segments with their own lock and share of the bound, so lookups of different keys rarely wait
+ */
+public class ResponseCache {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes memory bound of all responses, 0 to disable the cache
+     */
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(this.maxBytes / SEGMENTS);
+        }
+    }
+
+    /**
+     * @param key cache key
+     * @return cached response, null on a miss
+     */
+    public Response get(String key) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        Response response = segmentOf(key).get(key);
+        if (response == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return response;
+    }
+
+    /**
+     * cache a response, one larger than the share of its segment is not cached
+     */
+    public void put(String key, Response response) {
+        if (maxBytes > 0) {
+            segmentOf(key).put(key, response);
+        }
+    }
+
+    /**
+     * remove the response of a key
+     */
+    public void invalidate(String key) {
+        segmentOf(key).remove(key, null);
+    }
+
+    /**
+     * remove the response of a key, only if it is still the given one
+     */
+    public void invalidate(String key, Response response) {
+        segmentOf(key).remove(key, response);
+    }
+
+    /**
+     * remove the responses of every key starting with a prefix
+     */
+    public void invalidateByPrefix(String prefix) {
+        for (Segment segment : segments) {
+            segment.removeByPrefix(prefix);
+        }
+    }
+
+    /**
+     * @return counters for sizing the cache
+     */
+    public Map<String, Object> getMetrics() {
+        long entries = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                entries += segment.entries.size();
+                bytes += segment.bytes;
+            }
+        }
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("responseCacheHits", hitCount);
+        metrics.put("responseCacheMisses", lookups - hitCount);
+        metrics.put("responseCacheHitRate", lookups == 0 ? 0.0 : (double) hitCount / lookups);
+        metrics.put("responseCacheEvictions", evictions.sum());
+        metrics.put("responseCacheEntries", entries);
+        metrics.put("responseCacheBytes", bytes);
+        return metrics;
+    }
+
+    private Segment segmentOf(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private class Segment {
+        private final long maxBytes;
+        // access order, the eldest entry is the least recently used
+        private final LinkedHashMap<String, Response> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Response get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, Response response) {
+            int weight = weightOf(key, response);
+            if (weight > maxBytes) {
+                return;
+            }
+            Response previous = entries.put(key, response);
+            if (previous != null) {
+                bytes -= weightOf(key, previous);
+            }
+            bytes += weight;
+            Iterator<Map.Entry<String, Response>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                Map.Entry<String, Response> entry = eldest.next();
+                bytes -= weightOf(entry.getKey(), entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        /**
+         * @param response the expected response, null for any
+         */
+        synchronized void remove(String key, Response response) {
+            Response current = entries.get(key);
+            if (current != null && (response == null || current == response)) {
+                entries.remove(key);
+                bytes -= weightOf(key, current);
+            }
+        }
+
+        synchronized void removeByPrefix(String prefix) {
+            Iterator<Map.Entry<String, Response>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Response> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= weightOf(entry.getKey(), entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+
+        private int weightOf(String key, Response response) {
+            return response.weight() + 2 * key.length();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * server settings, read from system properties at startup
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * tunables of the server, e.g. java -Ddictionary.storage=offheap -jar DictionaryServer.jar
+ */
+public class ServerConfig {
+    // "heap" or "offheap", where the word store keeps its bytes
+    public static final String STORAGE = System.getProperty("dictionary.storage", "heap");
+    // "none" or "deflate", how descriptions are kept in memory
+    public static final String COMPRESSION = System.getProperty("dictionary.compression", "none");
+    // reload the dictionary when its file is changed by another program
+    public static final boolean WATCH_FILE = Boolean.getBoolean("dictionary.watch");
+    // connections queued or being handled at once, more are turned away
+    public static final int MAX_CONNECTIONS = Integer.getInteger("dictionary.maxConnections", 100);
+
+    // connections waiting for a worker thread
+    public static final int QUEUE_CAPACITY = Integer.getInteger("dictionary.queueCapacity", 50);
+
+    // requests per second allowed from one client address, 0 for unlimited
+    public static final int RATE_LIMIT = Integer.getInteger("dictionary.rateLimit", 50);
+
+    // requests one client address may send in a burst
+    public static final int RATE_BURST = Integer.getInteger("dictionary.rateBurst", 100);
+    // threads answering requests from memory, and their queue
+    public static final int EXECUTE_THREADS = Integer.getInteger("dictionary.executeThreads",
+            Runtime.getRuntime().availableProcessors());
+    // threads answering requests that read or write files, e.g. add and delete;
+    // adds and deletes running at the same time are written to the file together
+    public static final int PERSIST_THREADS = Integer.getInteger("dictionary.persistThreads", 8);
+    // threads writing responses to the clients
+    public static final int WRITE_THREADS = Integer.getInteger("dictionary.writeThreads", 2);
+    // requests waiting in each of the execute, persist and write stages
+    public static final int STAGE_QUEUE_CAPACITY = Integer.getInteger("dictionary.stageQueueCapacity", 100);
+    // milliseconds a connection may stay silent before its request starts
+    public static final int IDLE_TIMEOUT = Integer.getInteger("dictionary.idleTimeout", 5000);
+    // kept alive connections waiting for their next request, each on a thread of its own
+    // outside the decode stage; beyond them a connection is closed after its response
+    public static final int KEEP_ALIVE_CONNECTIONS = Integer.getInteger("dictionary.keepAliveConnections", 64);
+    // milliseconds a kept alive connection may stay silent between requests
+    public static final int KEEP_ALIVE_TIMEOUT = Integer.getInteger("dictionary.keepAliveTimeout", 15000);
+
+    // milliseconds allowed for the rest of a request to arrive once it started
+    public static final int READ_TIMEOUT = Integer.getInteger("dictionary.readTimeout", 5000);
+    // milliseconds to let accepted requests finish when shutting down
+    public static final int DRAIN_TIMEOUT = Integer.getInteger("dictionary.drainTimeout", 10000);
+
+    // serve over tls, with the key store of the javax.net.ssl.keyStore properties
+    public static final boolean TLS = Boolean.getBoolean("dictionary.tls");
+    // seconds a tls session can be resumed
+    public static final int TLS_SESSION_TIMEOUT = Integer.getInteger("dictionary.tlsSessionTimeout", 3600);
+
+    // bytes of serialized search responses kept for hot words, 0 to disable
+    public static final long RESPONSE_CACHE_BYTES = Long.getLong("dictionary.responseCacheBytes", 8L << 20);
+
+    // directory of the data files of the import and export commands, which are refused if it isn't set
+    public static final String DATA_DIR = System.getProperty("dictionary.dataDir", "");
+
+    // named dictionaries served besides the default one, "name=path,name=path"
+    public static final String DICTIONARIES = System.getProperty("dictionary.dictionaries", "");
+    // named dictionaries kept in memory at once, the least recently used one is unloaded
+    public static final int MAX_LOADED_DICTIONARIES = Integer.getInteger("dictionary.maxLoaded", 8);
+
+    // request traces kept for the traces command, and the share of requests traced
+    public static final int TRACE_CAPACITY = Integer.getInteger("dictionary.traceCapacity", 1024);
+    public static final double TRACE_SAMPLE_RATE = Double.parseDouble(
+            System.getProperty("dictionary.traceSampleRate", "0.1"));
+    // milliseconds after which a request is always traced and written to the slow-query log
+    public static final long SLOW_THRESHOLD = Long.getLong("dictionary.slowThreshold", 100);
+    // file the slow requests are appended to as json lines, standard error if empty
+    public static final String SLOW_LOG = System.getProperty("dictionary.slowLog", "");
+
+    public static boolean isOffHeapStorage() {
+        return "offheap".equalsIgnoreCase(STORAGE);
+    }
+
+    public static boolean isCompressed() {
+        return "deflate".equalsIgnoreCase(COMPRESSION);
+    }
+
+    /**
+     * @return dictionary name -> file path, malformed pairs are skipped
+     */
+    public static Map<String, String> getDictionaries() {
+        Map<String, String> dictionaries = new LinkedHashMap<>();
+        for (String pair : DICTIONARIES.split(",")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && equals < pair.length() - 1) {
+                dictionaries.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+            }
+        }
+        return dictionaries;
+    }
+}
@@ -17,4 +17,7 @@ public interface ServerListener {
 
     // a new request is received by server
     void onServerRequest(Socket socket, String command, String message);
+
+    // the dictionary was replaced by a freshly loaded file
+    void onDictionaryReloaded(String path);
 }
@@ -58,7 +58,7 @@ public class ServerWindow implements ServerListener {
                         window.port = port;
                     }
 
-                    if (parseUtil.isDictionaryFileLegal(args[1])) {
+                    if (DictionaryFile.recover(args[1])) {
                         window.filePath = args[1];
                     } else {
                         window.filePath = parseUtil.getDefaultDictPath();
@@ -109,6 +109,11 @@ public class ServerWindow implements ServerListener {
         showMessage("response message: " + message);
     }
 
+    @Override
+    public void onDictionaryReloaded(String path) {
+        showMessage(ConsoleMessage.RELOAD_SUCCEEDED + path);
+    }
+
     /**
      * initialize the server
      */
@@ -116,6 +121,9 @@ public class ServerWindow implements ServerListener {
         server = new DictionaryServer();
         server.setListener(this);
         server.setDictionaryFilePath(filePath);
+
+        // drain requests on kill or ctrl-c as well
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
     }
 
     /**
@@ -159,8 +167,7 @@ public class ServerWindow implements ServerListener {
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                server.closeServer();
-                server.shutdownThreadPool();
+                server.shutdown();
                 super.windowClosed(e);
             }
         });
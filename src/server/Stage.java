@@ -0,0 +1,89 @@
+/*
+ * one stage of the request pipeline
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a thread pool with a bounded queue, a full queue pushes back on the stage handing it work
+ */
+public class Stage implements Executor {
+    private static final long IDLE_THREAD_SECONDS = 60;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param name stage name, used for its threads
+     * @param coreThreads threads kept running
+     * @param maxThreads threads started once the queue is full
+     * @param queueCapacity tasks waiting for a thread, 0 to hand a task only to an idle or new thread
+     * @param runsWhenFull whether a task that doesn't fit runs in the submitting thread instead of being rejected
+     */
+    public Stage(String name, int coreThreads, int maxThreads, int queueCapacity, boolean runsWhenFull) {
+        this.name = name;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(coreThreads, Math.max(coreThreads, maxThreads),
+                IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                runnable -> new Thread(runnable, "dictionary-" + name + "-" + threadNumber.incrementAndGet()),
+                (runnable, pool) -> {
+                    rejected.increment();
+                    if (!runsWhenFull) {
+                        throw new RejectedExecutionException(name + " stage is full");
+                    }
+                    runnable.run();
+                });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the queue is full, or the stage is shut down
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * finish the queued tasks, those still running at the deadline are interrupted
+     * @param deadline System.nanoTime() to give up waiting
+     */
+    public void shutdown(long deadline) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return queue depth and task counters
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("queued", executor.getQueue().size());
+        metrics.put("active", executor.getActiveCount());
+        metrics.put("threads", executor.getPoolSize());
+        metrics.put("completed", executor.getCompletedTaskCount());
+        metrics.put("rejected", rejected.sum());
+        return metrics;
+    }
+}
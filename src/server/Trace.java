@@ -0,0 +1,134 @@
+/*
+ * timings of one request
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the moment a request reached every phase on its way through the stages.
+ * a request is handled by one thread at a time, and the stages hand it over safely
+ */
+public class Trace {
+    /**
+     * phases in order, each named after the time spent getting to it
+     */
+    public enum Phase {
+        ACCEPTED(null),
+        DECODING("queued"),
+        REQUEST_STARTED("idle"),
+        READ("read"),
+        PARSED("parse"),
+        EXECUTING("stageQueued"),
+        EXECUTED("execute"),
+        ENCODED("encode"),
+        WRITING("writeQueued"),
+        WRITTEN("write");
+
+        private final String interval;
+
+        Phase(String interval) {
+            this.interval = interval;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    // System.nanoTime() of every phase, 0 if it wasn't reached
+    private final long[] times = new long[PHASES.length];
+    private long startedAt;
+    private String client = "";
+    private String command = "unknown";
+    private String dictionary = "";
+    private String word = "";
+    private String stage = "";
+    private boolean isExpired;
+
+    /**
+     * @param acceptedAt System.nanoTime() when the connection was accepted
+     */
+    public Trace(long acceptedAt) {
+        times[Phase.ACCEPTED.ordinal()] = acceptedAt;
+        startedAt = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acceptedAt);
+    }
+
+    public void mark(Phase phase) {
+        times[phase.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * a kept alive connection waits for its next request, which isn't part of it,
+     * so the request counts from its first byte
+     */
+    public void startAtRequest() {
+        long requestStarted = times[Phase.REQUEST_STARTED.ordinal()];
+        startedAt = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestStarted);
+        times[Phase.ACCEPTED.ordinal()] = requestStarted;
+        times[Phase.DECODING.ordinal()] = requestStarted;
+    }
+
+    /**
+     * @param client client address
+     * @param command command
+     * @param dictionary dictionary name
+     * @param word word of the request, may be empty
+     */
+    public void setRequest(String client, String command, String dictionary, String word) {
+        this.client = client;
+        this.command = command;
+        this.dictionary = dictionary;
+        this.word = word;
+    }
+
+    /**
+     * @param stage name of the stage producing the response
+     */
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * the client gave up before the request got a response
+     */
+    public void setExpired() {
+        isExpired = true;
+    }
+
+    /**
+     * @return nanoseconds from accepting the request to the last phase reached
+     */
+    public long getTotalNanos() {
+        long last = times[0];
+        for (long time : times) {
+            last = Math.max(last, time);
+        }
+        return last - times[0];
+    }
+
+    /**
+     * @return the request and the microseconds spent getting to every phase reached
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> phases = new LinkedHashMap<>();
+        long previous = times[0];
+        for (int i = 1; i < PHASES.length; i++) {
+            if (times[i] != 0) {
+                phases.put(PHASES[i].interval, TimeUnit.NANOSECONDS.toMicros(times[i] - previous));
+                previous = times[i];
+            }
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("startedAt", startedAt);
+        map.put("client", client);
+        map.put("command", command);
+        map.put("dict", dictionary);
+        map.put("word", word);
+        map.put("stage", stage);
+        map.put("expired", isExpired);
+        map.put("totalMicros", TimeUnit.NANOSECONDS.toMicros(getTotalNanos()));
+        map.put("phases", phases);
+        return map;
+    }
+}
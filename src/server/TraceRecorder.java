@@ -0,0 +1,174 @@
+/*
+ * recent request traces and the slow-query log
+ */
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * keeps a sample of finished requests in a lock-free ring buffer, slow ones always,
+ * and writes the slow ones as json lines to the slow-query log from a background thread
+ */
+public class TraceRecorder {
+    private static final int SLOW_LOG_QUEUE_CAPACITY = 1024;
+
+    private final AtomicReferenceArray<Trace> ring;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final double sampleRate;
+    private final long slowNanos;
+
+    private final BlockingQueue<Trace> slowLogQueue = new ArrayBlockingQueue<>(SLOW_LOG_QUEUE_CAPACITY);
+    private final String slowLogPath;
+    private Thread slowLogThread;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder slowRequests = new LongAdder();
+    private final LongAdder slowLogDropped = new LongAdder();
+
+    /**
+     * @param capacity traces kept, rounded up to a power of two
+     * @param sampleRate share of requests kept, from 0 to 1
+     * @param slowMillis requests taking longer are kept and logged
+     * @param slowLogPath file the slow requests are appended to, standard error if empty
+     */
+    public TraceRecorder(int capacity, double sampleRate, long slowMillis, String slowLogPath) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.sampleRate = sampleRate;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.slowLogPath = slowLogPath;
+    }
+
+    /**
+     * @param trace trace of a finished request
+     */
+    public void record(Trace trace) {
+        boolean isSlow = trace.getTotalNanos() > slowNanos;
+        if (isSlow) {
+            slowRequests.increment();
+            if (!slowLogQueue.offer(trace)) {
+                slowLogDropped.increment();
+            }
+            startSlowLog();
+        } else if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        ring.set((int) (next.getAndIncrement() & mask), trace);
+        recorded.increment();
+    }
+
+    /**
+     * @param limit traces returned at most
+     * @param slowOnly only traces over the slow threshold
+     * @return traces, the most recent first
+     */
+    public List<Map<String, Object>> recent(int limit, boolean slowOnly) {
+        List<Map<String, Object>> traces = new ArrayList<>();
+        long last = next.get() - 1;
+        for (long i = last; i >= 0 && i > last - ring.length() && traces.size() < limit; i--) {
+            Trace trace = ring.get((int) (i & mask));
+            if (trace != null && (!slowOnly || trace.getTotalNanos() > slowNanos)) {
+                traces.add(trace.toMap());
+            }
+        }
+        return traces;
+    }
+
+    public int getCapacity() {
+        return ring.length();
+    }
+
+    /**
+     * @return counters of the traces
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("tracesRecorded", recorded.sum());
+        metrics.put("slowRequests", slowRequests.sum());
+        metrics.put("slowLogDropped", slowLogDropped.sum());
+        return metrics;
+    }
+
+    /**
+     * write out the slow requests still queued and stop the log
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = slowLogThread;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * the log is only opened once there is a slow request
+     */
+    private synchronized void startSlowLog() {
+        if (slowLogThread == null) {
+            slowLogThread = new Thread(this::writeSlowLog, "dictionary-slow-log");
+            slowLogThread.setDaemon(true);
+            slowLogThread.start();
+        }
+    }
+
+    private void writeSlowLog() {
+        try (Writer writer = slowLogPath.isEmpty()
+                ? new OutputStreamWriter(System.err, StandardCharsets.UTF_8) {
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                }
+                : Files.newBufferedWriter(Paths.get(slowLogPath), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            boolean isInterrupted = false;
+            while (!isInterrupted || !slowLogQueue.isEmpty()) {
+                Trace trace;
+                if (isInterrupted) {
+                    trace = slowLogQueue.poll();
+                } else {
+                    try {
+                        trace = slowLogQueue.take();
+                    } catch (InterruptedException e) {
+                        isInterrupted = true;
+                        continue;
+                    }
+                }
+                writer.write(new JSONObject(trace.toMap()).toString());
+                writer.write(System.lineSeparator());
+                if (slowLogQueue.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
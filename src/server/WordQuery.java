@@ -0,0 +1,118 @@
+/*
+ * filtered and sorted views of the word list
+ */
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * a list request: optional prefix, length range and wildcard pattern, and a sort order
+ */
+public class WordQuery {
+    public enum Sort {
+        FILE, ALPHABETICAL, LENGTH
+    }
+
+    private final String prefix;
+    private final int minLength;
+    private final int maxLength;
+    private final String pattern;
+    private final Pattern compiledPattern;
+    private final Sort sort;
+
+    public WordQuery(String prefix, int minLength, int maxLength, String pattern, Sort sort) {
+        this.prefix = prefix;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.pattern = pattern;
+        this.compiledPattern = pattern.isEmpty() ? null : compileWildcard(pattern);
+        this.sort = sort;
+    }
+
+    /**
+     * read the query from a list request
+     * @param json request, with optional prefix, length, minLength, maxLength, pattern and sort
+     * @return query
+     */
+    public static WordQuery of(JSONObject json) {
+        int length = json.optInt("length", 0);
+        int minLength = length > 0 ? length : json.optInt("minLength", 0);
+        int maxLength = length > 0 ? length : json.optInt("maxLength", Integer.MAX_VALUE);
+        String sortName = json.optString("sort", "file").trim().toUpperCase();
+        Sort sort;
+        try {
+            sort = Sort.valueOf(sortName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown sort order: " + sortName.toLowerCase());
+        }
+        return new WordQuery(json.optString("prefix").trim().toLowerCase(), minLength, maxLength,
+                json.optString("pattern").trim().toLowerCase(), sort);
+    }
+
+    /**
+     * @return whether the query returns every word in file order
+     */
+    public boolean isPlain() {
+        return prefix.isEmpty() && minLength <= 0 && maxLength == Integer.MAX_VALUE
+                && compiledPattern == null && sort == Sort.FILE;
+    }
+
+    /**
+     * cache key, equal for queries with equal results
+     */
+    public String key() {
+        return prefix + '\u0000' + minLength + '\u0000' + maxLength + '\u0000' + pattern + '\u0000' + sort;
+    }
+
+    /**
+     * filter and sort a snapshot of the words with a parallel stream
+     * @param words words in file order, not modified
+     * @return unmodifiable result
+     */
+    public List<String> apply(String[] words) {
+        Stream<String> stream = Arrays.stream(words).parallel()
+                .filter(word -> word.length() >= minLength && word.length() <= maxLength);
+        if (!prefix.isEmpty()) {
+            stream = stream.filter(word -> word.startsWith(prefix));
+        }
+        if (compiledPattern != null) {
+            stream = stream.filter(word -> compiledPattern.matcher(word).matches());
+        }
+        if (sort == Sort.ALPHABETICAL) {
+            stream = stream.sorted();
+        } else if (sort == Sort.LENGTH) {
+            stream = stream.sorted(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+        }
+        return Collections.unmodifiableList(stream.collect(Collectors.toList()));
+    }
+
+    /**
+     * "*" matches any run of characters, "?" any single character, the rest is literal
+     */
+    private static Pattern compileWildcard(String wildcard) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : wildcard.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -13,13 +13,29 @@ public class ConsoleMessage {
     public static final String WORD_EXISTS = "Add word failed: word already exists";
     public static final String ADD_WORD_SUCCEEDED = "Add word succeeded.";
     public static final String ADD_WORD_FAILED = "Add word failed: unknown reason.";
+    public static final String ADD_WORD_INVALID = "Add word failed: the word or description has characters a dictionary file can't hold.";
     public static final String WORD_NOT_EXISTS = "Delete word failed: word doesn't exists";
     public static final String DELETE_WORD_SUCCEEDED = "Delete word succeeded.";
     public static final String DELETE_WORD_FAILED = "Delete word failed: unknown reason.";
     public static final String SEARCH_NOT_EXISTS = "Search word failed: word doesn't exists";
+    public static final String DEFINE_SEARCH_EMPTY = "Define search failed: please input description keywords.";
+    public static final String DEFINE_SEARCH_NOT_FOUND = "Define search: no word matches the description.";
+    public static final String RELOAD_SUCCEEDED = "Dictionary reloaded: ";
+    public static final String DICTIONARY_UNAVAILABLE = "Dictionary is unknown or its file is invalid: ";
+    public static final String RELOAD_FAILED = "Reload failed: dictionary file is invalid, the current dictionary is kept.";
+    public static final String SERVER_BUSY = "Server is busy, please retry later.";
+    public static final String RATE_LIMITED = "Too many requests, please slow down.";
+    public static final String TRANSFER_FILE_EMPTY = "Please specify the data file.";
+    public static final String TRANSFER_DISABLED = "Import and export are disabled: the server has no data directory.";
+    public static final String TRANSFER_FILE_INVALID = "The data file must be a relative path inside the data directory.";
+    public static final String IMPORT_FAILED = "Import failed: ";
+    public static final String EXPORT_FAILED = "Export failed: ";
+    public static final String LIST_FAILED = "List words failed: ";
+    public static final String LIST_VERSION_EXPIRED = "List words failed: the version is no longer available, please list again.";
     public static final String INVALID_REQUEST = "Error occurred.";
     public static final String SERVER_EMPTY = "Please input server address.";
     public static final String WORD_EMPTY = "Please input word.";
     public static final String DES_EMPTY = "Please input description.";
+    public static final String REQUEST_TIMEOUT = "Request timed out, please retry later.";
     public static final String CONNECT_FAILED = "Connect failed,please check server address and port.";
 }
@@ -9,6 +9,11 @@ import org.dom4j.io.SAXReader;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -99,6 +104,28 @@ public class parseUtil {
         }
     }
 
+    /**
+     * check if text only has characters allowed in xml 1.0,
+     * a dictionary file can't hold the others, e.g. control characters
+     * @param text word or description
+     * @return legal
+     */
+    public static boolean isXmlText(String text) {
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            boolean isLegal = c == 0x9 || c == 0xA || c == 0xD
+                    || (c >= 0x20 && c <= 0xD7FF)
+                    || (c >= 0xE000 && c <= 0xFFFD)
+                    || (c >= 0x10000 && c <= 0x10FFFF);
+            if (!isLegal) {
+                // includes a lone surrogate
+                return false;
+            }
+            i += Character.charCount(c);
+        }
+        return true;
+    }
+
     /**
      * get all words
      * @return list of words
@@ -143,9 +170,7 @@ public class parseUtil {
             Element desElement = nodeElement.addElement("des");
             desElement.setText(des);
 
-            FileWriter out = new FileWriter(path);
-            dom.write(out);
-            out.close();
+            writeDictionary(dom, path);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -169,9 +194,7 @@ public class parseUtil {
                     if(word.equals(nodeElement.element("word").getText())) {
                         root.remove(nodeElement);
 
-                        FileWriter out = new FileWriter(path);
-                        dom.write(out);
-                        out.close();
+                        writeDictionary(dom, path);
                         return true;
                     }
                 }
@@ -206,6 +229,27 @@ public class parseUtil {
         return "";
     }
 
+    /**
+     * write to a temp file and rename it over the dictionary file,
+     * so a failed write never leaves a truncated file
+     * @param dom dictionary document
+     * @param path file path
+     */
+    private static void writeDictionary(Document dom, String path) throws IOException {
+        Path file = Paths.get(path);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            dom.write(writer);
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
     private static Document getDictDom(String path) throws DocumentException {
         SAXReader saxReader = new SAXReader();
         File file = new File(path);